@@ -0,0 +1,30 @@
+package tech.octopusdragon.connectfour.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the engine benchmarks with the GC profiler, so that the bytes
+ * allocated per operation are reported next to the time per operation.
+ * <p>
+ * Usage: BenchmarkRunner [regex], by default every benchmark in this package.
+ * benchmarks/pom.xml builds everything this needs into
+ * benchmarks/target/benchmarks.jar, which also runs plain JMH with java -jar.
+ * @author Alex Gill
+ *
+ */
+public class BenchmarkRunner {
+	
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0]: BenchmarkRunner.class.getPackage().getName() + ".*";
+		Options options = new OptionsBuilder()
+				.include(include)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+	
+}
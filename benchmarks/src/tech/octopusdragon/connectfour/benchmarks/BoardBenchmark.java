@@ -0,0 +1,90 @@
+package tech.octopusdragon.connectfour.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tech.octopusdragon.connectfour.ConnectFour;
+
+/**
+ * Benchmarks the methods of ConnectFour that the search calls for every
+ * position. Each operation goes over every position of the phase's corpus.
+ * Dropping a token also updates the evaluation of the position, which
+ * replaced the old scoreBoard, so drop measures both.
+ * @author Alex Gill
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+	
+	@Param({"EARLY", "MID", "LATE"})
+	public Corpus.Phase phase;	// The positions to benchmark with
+	
+	private ConnectFour[] games;	// The positions
+	private int[] columns;			// A valid column in each position
+	
+	
+	@Setup
+	public void setUp() {
+		games = Corpus.games(phase);
+		columns = Corpus.columns(games);
+	}
+	
+	
+	
+	/**
+	 * Drops a token in each position and takes it back.
+	 */
+	@Benchmark
+	public void drop() {
+		for (int i = 0; i < games.length; i++) {
+			games[i].drop(columns[i]);
+			games[i].undo();
+		}
+	}
+	
+	
+	
+	@Benchmark
+	public void getWinner(Blackhole blackhole) {
+		for (ConnectFour game : games)
+			blackhole.consume(game.getWinner());
+	}
+	
+	
+	
+	@Benchmark
+	public void isOver(Blackhole blackhole) {
+		for (ConnectFour game : games)
+			blackhole.consume(game.isOver());
+	}
+	
+	
+	
+	/**
+	 * Checks every column of each position.
+	 */
+	@Benchmark
+	public void validColumn(Blackhole blackhole) {
+		for (ConnectFour game : games)
+			for (int column = 0; column < ConnectFour.COLUMNS; column++)
+				blackhole.consume(game.validColumn(column));
+	}
+	
+}
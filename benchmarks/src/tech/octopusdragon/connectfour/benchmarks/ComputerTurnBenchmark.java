@@ -0,0 +1,92 @@
+package tech.octopusdragon.connectfour.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tech.octopusdragon.connectfour.ConnectFour;
+import tech.octopusdragon.connectfour.Difficulty;
+import tech.octopusdragon.connectfour.OpeningBook;
+
+/**
+ * Benchmarks a whole computer move at each difficulty. Each operation has
+ * the computer move once in every position of the phase's corpus. The
+ * computer's tables are cleared before each operation so that no move is
+ * found from what an earlier operation stored.
+ * <p>
+ * The opening book in the working directory is used if there is one, and
+ * the book bundled with the game otherwise. Neither need go as deep as the
+ * EARLY positions, and PERFECT could take minutes to solve them from
+ * scratch, so it moves with PERFECT_BUDGET as the other difficulties would
+ * with a time budget, and falls back on the minimax search when the solver
+ * runs out of time.
+ * @author Alex Gill
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComputerTurnBenchmark {
+	
+	public static final Duration PERFECT_BUDGET = Duration.ofMillis(500);	// Time for a perfect move
+	
+	@Param({"EASY", "MEDIUM", "HARD", "PERFECT"})
+	public Difficulty difficulty;	// The difficulty of the computer
+	
+	@Param({"EARLY", "MID", "LATE"})
+	public Corpus.Phase phase;		// The positions to benchmark with
+	
+	private ConnectFour[] games;	// The positions
+	private Duration budget;		// Time for each move, or null for none
+	
+	
+	@Setup
+	public void setUp() {
+		OpeningBook book = OpeningBook.openDefault();
+		games = Corpus.games(phase);
+		budget = difficulty == Difficulty.PERFECT ? PERFECT_BUDGET: null;
+		for (ConnectFour game : games) {
+			game.setDifficulty(difficulty);
+			game.setOpeningBook(book);
+			game.setSeed(0);
+		}
+	}
+	
+	
+	
+	@Setup(Level.Invocation)
+	public void clearTables() {
+		for (ConnectFour game : games)
+			game.clearTables();
+	}
+	
+	
+	
+	/**
+	 * Has the computer move in each position and takes the move back.
+	 */
+	@Benchmark
+	public void computerTurn(Blackhole blackhole) {
+		for (ConnectFour game : games) {
+			blackhole.consume(game.computerTurn(budget));
+			game.undo();
+		}
+	}
+	
+}
@@ -0,0 +1,99 @@
+package tech.octopusdragon.connectfour.benchmarks;
+
+import tech.octopusdragon.connectfour.ConnectFour;
+import tech.octopusdragon.connectfour.Token;
+
+/**
+ * The fixed positions the benchmarks are run over. Each position is written
+ * as the columns played from the empty grid, numbered from 1, with P1 moving
+ * first. None of them is over.
+ * @author Alex Gill
+ *
+ */
+public final class Corpus {
+	
+	/**
+	 * Stages of the game the positions are taken from.
+	 */
+	public enum Phase {
+		EARLY,	// 4 moves in
+		MID,	// 12 moves in
+		LATE	// 28 moves in
+	}
+	
+	private static final String[] EARLY = {
+			"4453",
+			"3344",
+			"4436",
+			"1724"
+	};
+	
+	private static final String[] MID = {
+			"664721535646",
+			"165421563533",
+			"263454611331",
+			"665472233577"
+	};
+	
+	private static final String[] LATE = {
+			"3732121265316625465356117377",
+			"7656712367167763257423354214",
+			"3245775156732617335446723566",
+			"7526177754324451211273466631"
+	};
+	
+	
+	private Corpus() {
+	}
+	
+	
+	
+	/**
+	 * Creates a new game for each position of the given phase.
+	 * @param phase The phase.
+	 * @return The games.
+	 */
+	public static ConnectFour[] games(Phase phase) {
+		String[] positions;
+		switch (phase) {
+		case EARLY:
+			positions = EARLY;
+			break;
+		case MID:
+			positions = MID;
+			break;
+		default:
+			positions = LATE;
+			break;
+		}
+		ConnectFour[] games = new ConnectFour[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			games[i] = new ConnectFour(Token.P1);
+			for (char column : positions[i].toCharArray())
+				games[i].drop(column - '1');
+		}
+		return games;
+	}
+	
+	
+	
+	/**
+	 * Returns a valid column in each of the given games, nearest the center.
+	 * @param games The games.
+	 * @return A column for each game.
+	 */
+	public static int[] columns(ConnectFour[] games) {
+		int[] columns = new int[games.length];
+		for (int i = 0; i < games.length; i++) {
+			for (int offset = 0; offset < ConnectFour.COLUMNS; offset++) {
+				int column = ConnectFour.COLUMNS / 2 + (offset % 2 == 0 ? offset / 2: -(offset + 1) / 2);
+				if (games[i].validColumn(column)) {
+					columns[i] = column;
+					break;
+				}
+			}
+		}
+		return columns;
+	}
+	
+}
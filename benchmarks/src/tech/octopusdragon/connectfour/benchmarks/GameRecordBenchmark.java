@@ -0,0 +1,116 @@
+package tech.octopusdragon.connectfour.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tech.octopusdragon.connectfour.ConnectFour;
+import tech.octopusdragon.connectfour.GameRecordReader;
+import tech.octopusdragon.connectfour.GameRecordWriter;
+import tech.octopusdragon.connectfour.Token;
+
+/**
+ * Benchmarks writing and reading an archive of finished games as game
+ * records, and replaying the records into games. The archive is held in
+ * memory so that only the encoding is measured. Times are per game.
+ * @author Alex Gill
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameRecordBenchmark {
+	
+	private static final int GAMES = 10000;	// Games in the archive
+	
+	private ConnectFour[] games;	// Random finished games
+	private byte[] archive;			// The games written as records
+	
+	
+	@Setup
+	public void setUp() throws IOException {
+		Random random = new Random(0);
+		games = new ConnectFour[GAMES];
+		for (int i = 0; i < GAMES; i++) {
+			games[i] = new ConnectFour(random.nextBoolean() ? Token.P1: Token.P2);
+			while (!games[i].isOver()) {
+				int column = random.nextInt(ConnectFour.COLUMNS);
+				if (games[i].validColumn(column))
+					games[i].play(column);
+			}
+		}
+		archive = write();
+	}
+	
+	
+	
+	/**
+	 * Writes every game to an in-memory archive.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(GAMES)
+	public byte[] writeRecords() throws IOException {
+		return write();
+	}
+	
+	
+	
+	/**
+	 * Reads the moves of every game in the archive.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(GAMES)
+	public void readRecords(Blackhole blackhole) throws IOException {
+		try (GameRecordReader reader = new GameRecordReader(
+				Channels.newChannel(new ByteArrayInputStream(archive)))) {
+			while (reader.next())
+				blackhole.consume(reader.getMove(reader.getMoveCount() - 1));
+		}
+	}
+	
+	
+	
+	/**
+	 * Reads every game in the archive and plays it.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(GAMES)
+	public void replayRecords(Blackhole blackhole) throws IOException {
+		try (GameRecordReader reader = new GameRecordReader(
+				Channels.newChannel(new ByteArrayInputStream(archive)))) {
+			while (reader.next())
+				blackhole.consume(reader.toGame().getWinner());
+		}
+	}
+	
+	
+	
+	private byte[] write() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(GAMES * 16);
+		try (GameRecordWriter writer = new GameRecordWriter(Channels.newChannel(bytes))) {
+			for (ConnectFour game : games)
+				writer.write(game);
+		}
+		return bytes.toByteArray();
+	}
+	
+}
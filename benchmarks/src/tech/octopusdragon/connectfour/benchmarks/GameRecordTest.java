@@ -0,0 +1,83 @@
+package tech.octopusdragon.connectfour.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import tech.octopusdragon.connectfour.GameRecord;
+import tech.octopusdragon.connectfour.GameRecordReader;
+import tech.octopusdragon.connectfour.GameRecordWriter;
+import tech.octopusdragon.connectfour.Token;
+
+/**
+ * Checks that a record the writer refuses leaves nothing behind in the
+ * stream. Valid games are written with invalid ones in between, one with a
+ * column out of range and one with too many moves, and the stream is read
+ * back. Only the valid games must come out, unchanged.
+ * <p>
+ * Usage: GameRecordTest. Prints OK, or the first difference and exits with
+ * status 1.
+ * @author Alex Gill
+ *
+ */
+public class GameRecordTest {
+	
+	private static final int[][] VALID = {
+			{3, 3, 4, 4, 2},
+			{0, 1, 2, 3, 4, 5, 6},
+			{}
+	};
+	
+	
+	public static void main(String[] args) throws IOException {
+		// Write each valid game followed by the invalid ones
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int refused = 0;
+		try (GameRecordWriter writer = new GameRecordWriter(Channels.newChannel(bytes))) {
+			for (int[] moves : VALID) {
+				writer.write(Token.P1, moves, moves.length);
+				try {
+					writer.write(Token.P2, new int[] {3, 4, GameRecord.MAX_COLUMNS}, 3);
+				}
+				catch (IllegalArgumentException e) {
+					refused++;
+				}
+				try {
+					writer.write(Token.P2, new int[GameRecord.MAX_MOVES + 1],
+							GameRecord.MAX_MOVES + 1);
+				}
+				catch (IllegalArgumentException e) {
+					refused++;
+				}
+			}
+		}
+		check(refused == 2 * VALID.length, "refused " + refused + " invalid records");
+		
+		// Read the valid games back
+		try (GameRecordReader reader = new GameRecordReader(
+				Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())))) {
+			for (int[] moves : VALID) {
+				check(reader.next(), "stream ended before " + Arrays.toString(moves));
+				int[] read = new int[reader.getMoveCount()];
+				for (int i = 0; i < read.length; i++)
+					read[i] = reader.getMove(i);
+				check(Arrays.equals(read, moves) && reader.getStartingPlayer() == Token.P1,
+						"read " + Arrays.toString(read) + " instead of " + Arrays.toString(moves));
+			}
+			check(!reader.next(), "read a game past the valid ones");
+		}
+		System.out.println("OK");
+	}
+	
+	
+	
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			System.out.println("FAILED: " + message);
+			System.exit(1);
+		}
+	}
+
+}
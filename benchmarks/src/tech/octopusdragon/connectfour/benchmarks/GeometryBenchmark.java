@@ -0,0 +1,111 @@
+package tech.octopusdragon.connectfour.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tech.octopusdragon.connectfour.ConnectFour;
+import tech.octopusdragon.connectfour.Difficulty;
+import tech.octopusdragon.connectfour.Geometry;
+import tech.octopusdragon.connectfour.Token;
+
+/**
+ * Benchmarks how the cost of the search grows with the size of the grid and
+ * the line length. Each operation has the computer search the empty grid to
+ * a fixed depth with empty tables, and then replays a whole game of random
+ * drops to measure the win check and evaluation update.
+ * Geometries are written as rows x columns x line length.
+ * @author Alex Gill
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeometryBenchmark {
+	
+	@Param({"6x7x4", "7x8x4", "7x9x4", "6x7x5", "8x8x5"})
+	public String geometry;	// The geometry to benchmark with
+	
+	@Param({"6", "8"})
+	public int depth;		// The depth to search to
+	
+	private Geometry grid;	// The parsed geometry
+	private ConnectFour game;	// The game searched on
+	private int[] dropColumns;	// Columns of a random game, in order
+	private int dropCount;		// Number of moves in the random game
+	
+	
+	@Setup
+	public void setUp() {
+		String[] parts = geometry.split("x");
+		grid = Geometry.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+				Integer.parseInt(parts[2]));
+		game = new ConnectFour(grid, Token.P1);
+		game.setDifficulty(Difficulty.HARD);
+		game.setMaxDepth(depth);
+		game.setSeed(0);
+		
+		// Play a random game among the columns that are not full. It ends
+		// once someone wins or the grid fills up.
+		Random random = new Random(0);
+		ConnectFour randomGame = new ConnectFour(grid, Token.P1);
+		int spaces = grid.getRows() * grid.getColumns();
+		dropColumns = new int[spaces];
+		dropCount = 0;
+		while (!randomGame.isOver() && dropCount < spaces) {
+			int column = random.nextInt(grid.getColumns());
+			if (randomGame.validColumn(column)) {
+				randomGame.drop(column);
+				dropColumns[dropCount++] = column;
+			}
+		}
+	}
+	
+	
+	
+	@Setup(Level.Invocation)
+	public void clearTables() {
+		game.clearTables();
+	}
+	
+	
+	
+	/**
+	 * Has the computer move on the empty grid and takes the move back.
+	 */
+	@Benchmark
+	public void computerTurn(Blackhole blackhole) {
+		blackhole.consume(game.computerTurn());
+		game.undo();
+	}
+	
+	
+	
+	/**
+	 * Drops the tokens of the random game until the game is over.
+	 */
+	@Benchmark
+	public void dropGame(Blackhole blackhole) {
+		ConnectFour dropGame = new ConnectFour(grid, Token.P1);
+		for (int n = 0; n < dropCount && !dropGame.isOver(); n++)
+			dropGame.drop(dropColumns[n]);
+		blackhole.consume(dropGame.getWinner());
+	}
+	
+}
@@ -0,0 +1,235 @@
+package tech.octopusdragon.connectfour.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import tech.octopusdragon.connectfour.Difficulty;
+import tech.octopusdragon.connectfour.GameServer;
+
+/**
+ * Puts load on a GameServer and reports the moves made per second and the
+ * latency of the requests. Each client opens its own connection and plays
+ * whole games against the computer, dropping a token in a random column and
+ * then asking for the computer's reply, until the game is over.
+ * <p>
+ * Usage: ServerLoadTest [clients] [games per client] [host port], by default
+ * 64 clients playing 20 games each against a server started in this JVM. The
+ * computer searches the server's maximum depth rather than against a clock
+ * when the server is started here. The server's scheduler statistics are
+ * reported at the end.
+ * @author Alex Gill
+ *
+ */
+public class ServerLoadTest {
+	
+	public static final int DEFAULT_CLIENTS = 64;
+	public static final int DEFAULT_GAMES = 20;
+	
+	/**
+	 * The connection and the timings of one client.
+	 */
+	private static class Client {
+		final BufferedReader in;	// Replies from the server
+		final Writer out;			// Commands to the server
+		final Random random;		// Chooses the client's columns
+		long[] dropTimes = new long[256];	// Nanoseconds taken by each DROP
+		int drops = 0;
+		long[] aiTimes = new long[256];		// Nanoseconds taken by each AI
+		int ais = 0;
+		
+		Client(Socket socket, long seed) throws IOException {
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+					StandardCharsets.UTF_8));
+			out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+					StandardCharsets.UTF_8));
+			random = new Random(seed);
+		}
+		
+		/**
+		 * Sends a command and waits for the reply.
+		 */
+		String send(String command) throws IOException {
+			out.write(command);
+			out.write('\n');
+			out.flush();
+			String reply = in.readLine();
+			if (reply == null)
+				throw new IOException("Connection closed");
+			return reply;
+		}
+	}
+	
+	
+	public static void main(String[] args) throws Exception {
+		int clients = args.length > 0 ? Integer.parseInt(args[0]): DEFAULT_CLIENTS;
+		int games = args.length > 1 ? Integer.parseInt(args[1]): DEFAULT_GAMES;
+		
+		// Start a server here unless one is given
+		GameServer server = null;
+		String host = "localhost";
+		int port;
+		if (args.length > 3) {
+			host = args[2];
+			port = Integer.parseInt(args[3]);
+		}
+		else {
+			server = new GameServer(0);
+			for (Difficulty difficulty : Difficulty.values())
+				server.getScheduler().setBudget(difficulty, null);
+			server.start();
+			port = server.getPort();
+		}
+		
+		// Play the games
+		Client[] results = new Client[clients];
+		Thread[] threads = new Thread[clients];
+		final String serverHost = host;
+		final int serverPort = port;
+		long start = System.nanoTime();
+		for (int i = 0; i < clients; i++) {
+			final int index = i;
+			threads[i] = new Thread(() -> {
+				try (Socket socket = new Socket(serverHost, serverPort)) {
+					socket.setTcpNoDelay(true);
+					results[index] = new Client(socket, index);
+					for (int game = 0; game < games; game++)
+						playGame(results[index]);
+					results[index].send("QUIT");
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		String stats;
+		try (Socket socket = new Socket(host, port)) {
+			Client client = new Client(socket, 0);
+			stats = expectOk(client.send("STATS"));
+			client.send("QUIT");
+		}
+		if (server != null)
+			server.close();
+		
+		// Report
+		long[] dropTimes = new long[0];
+		long[] aiTimes = new long[0];
+		for (Client client : results) {
+			if (client == null)
+				continue;
+			dropTimes = concat(dropTimes, client.dropTimes, client.drops);
+			aiTimes = concat(aiTimes, client.aiTimes, client.ais);
+		}
+		int moves = dropTimes.length + aiTimes.length;
+		System.out.printf("%d clients, %d games each: %d moves in %.2f s, %.0f moves/s%n",
+				clients, games, moves, seconds, moves / seconds);
+		System.out.printf("%-6s %10s %10s %10s %10s %10s%n",
+				"", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+		printLatencies("DROP", dropTimes);
+		printLatencies("AI", aiTimes);
+		System.out.println("Scheduler: " + stats);
+	}
+	
+	
+	
+	/**
+	 * Plays one game against the computer, timing each request.
+	 * @param client The client.
+	 * @throws IOException If the server cannot be reached or gives an
+	 * unexpected reply.
+	 */
+	private static void playGame(Client client) throws IOException {
+		String reply = client.send("NEW HARD");
+		String id = expectOk(reply).split(" ")[0];
+		String status = "PLAYING";
+		while (status.equals("PLAYING")) {
+			
+			// Drop in random columns until one is not full
+			do {
+				int column = client.random.nextInt(7) + 1;
+				long start = System.nanoTime();
+				reply = client.send("DROP " + id + " " + column);
+				if (reply.startsWith("OK"))
+					client.dropTimes = record(client.dropTimes, client.drops++,
+							System.nanoTime() - start);
+			} while (reply.startsWith("ERR Invalid column"));
+			status = expectOk(reply);
+			if (!status.equals("PLAYING"))
+				break;
+			
+			// Let the computer reply
+			long start = System.nanoTime();
+			reply = client.send("AI " + id);
+			client.aiTimes = record(client.aiTimes, client.ais++, System.nanoTime() - start);
+			status = expectOk(reply).split(" ")[1];
+		}
+		expectOk(client.send("END " + id));
+	}
+	
+	
+	
+	/**
+	 * Returns what follows OK in the given reply.
+	 * @param reply The reply.
+	 * @return The rest of the reply.
+	 * @throws IOException If the reply is not OK.
+	 */
+	private static String expectOk(String reply) throws IOException {
+		if (!reply.startsWith("OK"))
+			throw new IOException("Unexpected reply: " + reply);
+		return reply.substring(Math.min(3, reply.length()));
+	}
+	
+	
+	
+	private static long[] record(long[] times, int index, long time) {
+		if (index == times.length)
+			times = Arrays.copyOf(times, times.length * 2);
+		times[index] = time;
+		return times;
+	}
+	
+	
+	
+	private static long[] concat(long[] a, long[] b, int bLength) {
+		long[] result = Arrays.copyOf(a, a.length + bLength);
+		System.arraycopy(b, 0, result, a.length, bLength);
+		return result;
+	}
+	
+	
+	
+	/**
+	 * Prints percentiles of the given latencies.
+	 * @param name The name of the request.
+	 * @param times The latencies in nanoseconds.
+	 */
+	private static void printLatencies(String name, long[] times) {
+		if (times.length == 0)
+			return;
+		Arrays.sort(times);
+		System.out.printf("%-6s %10.3f %10.3f %10.3f %10.3f %10.3f%n", name,
+				percentile(times, 0.5), percentile(times, 0.9), percentile(times, 0.99),
+				percentile(times, 0.999), times[times.length - 1] / 1e6);
+	}
+	
+	
+	
+	private static double percentile(long[] sorted, double fraction) {
+		int index = (int)Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+	
+}
@@ -0,0 +1,128 @@
+package tech.octopusdragon.connectfour;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javafx.scene.image.Image;
+
+/**
+ * Decodes the images of the game once and shares them. Each image is decoded
+ * the first time it is asked for, and every later request gets the same Image
+ * instance, so showing a dialog at the end of every game does not decode its
+ * picture again.
+ * <p>
+ * Images can be preloaded in the background, several at a time on a small
+ * pool of loader threads, so that they are decoded while the application
+ * starts up. Asking for an image that is still being decoded waits for it.
+ * The loader threads are daemons and stop once they have been idle for a
+ * while.
+ * @author Alex Gill
+ *
+ */
+public class AssetCache {
+	
+	// Every image the application shows
+	public static final String[] IMAGES = {
+			"p1_token.png", "p2_token.png", "background.jpg", "hole.png",
+			"top_left_corner.png", "top_right_corner.png", "bottom_left_corner.png",
+			"bottom_right_corner.png", "top_edge.png", "left_edge.png",
+			"bottom_edge.png", "right_edge.png", "left_stand.png", "right_stand.png",
+			"token.png", "winner.png", "loser.png", "tie.png", "computer.png"
+	};
+	
+	public static final int MAX_LOADERS = 4;	// Most images decoded at once
+	
+	private static final long KEEP_ALIVE_SECONDS = 1;	// Idle time of a loader
+	
+	private final ConcurrentHashMap<String, CompletableFuture<Image>> images;
+	private final ThreadPoolExecutor loader;	// Decodes the images
+	
+	
+	/**
+	 * This constructor instantiates an empty cache with a loader thread per
+	 * processor, up to MAX_LOADERS.
+	 */
+	public AssetCache() {
+		int threads = Math.max(1, Math.min(MAX_LOADERS, Runtime.getRuntime().availableProcessors()));
+		images = new ConcurrentHashMap<>();
+		loader = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "connect-four-loader");
+					thread.setDaemon(true);
+					return thread;
+				});
+		loader.allowCoreThreadTimeOut(true);
+	}
+	
+	
+	
+	/**
+	 * Starts decoding the given images in the background and returns at once.
+	 * Images already decoded or being decoded are skipped.
+	 * @param names The resource names of the images.
+	 */
+	public void preload(String... names) {
+		for (String name : names)
+			load(name);
+	}
+	
+	
+	
+	/**
+	 * Returns the given image, decoding it if it has not been yet or waiting
+	 * for it if it is being decoded.
+	 * @param name The resource name of the image.
+	 * @return The image.
+	 * @throws IllegalArgumentException If there is no such resource.
+	 * @throws UncheckedIOException If the resource cannot be read.
+	 */
+	public Image get(String name) {
+		try {
+			return load(name).join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw e;
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the future image with the given name, starting to decode it on
+	 * the loader if no one has asked for it before.
+	 * @param name The resource name of the image.
+	 * @return The future image.
+	 */
+	private CompletableFuture<Image> load(String name) {
+		return images.computeIfAbsent(name,
+				key -> CompletableFuture.supplyAsync(() -> decode(key), loader));
+	}
+	
+	
+	
+	/**
+	 * Reads and decodes an image from the class path.
+	 * @param name The resource name of the image.
+	 * @return The image.
+	 */
+	private static Image decode(String name) {
+		try (InputStream in = AssetCache.class.getClassLoader().getResourceAsStream(name)) {
+			if (in == null)
+				throw new IllegalArgumentException("No such image: " + name);
+			return new Image(in);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+}
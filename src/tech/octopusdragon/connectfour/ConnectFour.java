@@ -1,24 +1,95 @@
 package tech.octopusdragon.connectfour;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Represents a game of Connect Four. Players can drop tokens down columns of
  * the rack grid.
+ * <p>
+ * A game is changed by one thread at a time. Computer moves computed in the
+ * background are searched on a separate engine copy that only its own queue
+ * of tasks changes. Other threads read the game through getSnapshot, which
+ * returns the unchangeable snapshot published after the last move.
  * @author Alex Gill
  *
  */
 public class ConnectFour {
 	
-	public static final int ROWS = 6;			// Number of rows on the grid
-	public static final int COLUMNS = 7;		// Number of columns on the grid
-	public static final int LINE_LENGTH = 4;	// Number in a row needed to win
+	public static final int ROWS = 6;			// Rows on the standard grid
+	public static final int COLUMNS = 7;		// Columns on the standard grid
+	public static final int LINE_LENGTH = 4;	// Standard number in a row to win
 	public static final int MAX_DEPTH = 5;
+	public static final int DEFAULT_TABLE_SIZE = 16;	// Megabytes
 	
-	private Token[][] grid;		// The rack grid
+	// Thread pools for parallel searches, by number of threads
+	private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+	
+	private final Geometry geometry;	// Size of the grid and its tables
+	private final int rows;		// Number of rows on the grid
+	private final int columns;	// Number of columns on the grid
+	private final int stride;	// Bits taken up by each column of a bitboard
+	private long[] bitboards;	// The tokens of each player, indexed by ordinal
+	private int[] heights;		// The number of tokens in each column
+	private int[] moves;		// The columns played so far, in order
+	private int moveCount;		// The number of tokens on the grid
+	private Token winner;		// The winner or EMPTY if no one has won yet
+	private long hash;			// The Zobrist hash of the position
+	private long mirrorHash;	// The Zobrist hash of its mirror image
+	private int[][] windowCounts;	// Tokens of each player in each window
+	private int evaluation;		// Window points of P1 minus those of P2
 	private Token curPlayer;	// The current player
+	private volatile GameSnapshot snapshot;	// Published after each move
 	private Difficulty difficulty;	// The computer difficulty
+	private int maxDepth = MAX_DEPTH;	// Moves to search ahead without a budget
+	private int tableSize = DEFAULT_TABLE_SIZE;	// Megabytes for the table
+	private TranspositionTable table;	// Created on the first search
+	private Solver solver;		// Created on the first perfect move
+	private OpeningBook book;	// Solved opening positions, if any
+	private Tablebase tablebase;	// Solved endgame positions, if any
+	private int threads = 1;	// Threads to search with
+	private SearchMode searchMode = SearchMode.ROOT_SPLIT;	// How threads split work
+	private Random random = new Random();	// Breaks ties between moves
+	private SearchListener listener;	// Told about each search, if any
+	private SearchStats stats;			// Statistics of the last search
+	private ConnectFour engine;			// Copy that moves are computed on
+	private CompletableFuture<?> engineIdle = CompletableFuture.completedFuture(null);
+	private volatile CompletableFuture<?> request;	// Work the engine is doing
+	private CompletableFuture<Void> pondering;	// Pondering in progress, if any
+	// Moves found while pondering, by the canonical hash of the position
+	// they are for and as seen in the canonical image
+	private final ConcurrentHashMap<Long, MoveResult> pondered = new ConcurrentHashMap<>();
+	
+	// Search state
+	private int searchDepth;		// Depth of the current search iteration
+	private int[] rootOrder;		// Order to search the columns at the root
+	private int[] rootScores;		// Evaluation of each column at the root
+	private int[] finishedScores;	// Root evaluations of the last finished depth
+	private int depthReached;		// Depth of the last finished search
+	private int[][] moveBuffers;	// Columns to search at each depth
+	private int[][] killers;		// Columns that caused cutoffs at each depth
+	private int[][] history;		// Cutoffs caused by each player per space
+	private boolean moveOrdering = true;	// Whether to order moves
+	private long nodes;				// Number of positions searched
+	private long cutoffs;			// Number of moves that caused a cutoff
+	private long firstMoveCutoffs;	// Number of cutoffs by the first move
+	private long tableProbes;		// Number of transposition table lookups
+	private long tableHits;			// Number of lookups that found the position
+	private boolean timed;			// Whether the search has a deadline
+	private long deadline;			// System.nanoTime() to stop searching at
+	private boolean timeUp;			// Whether the deadline has passed
+	private ConcurrentLinkedQueue<ConnectFour> helpers;	// Idle search copies
+	private ConnectFour master;		// The game a helper is searching for
+	private volatile boolean stopHelpers;	// Whether helpers are to stop
 	
 	
 	/**
@@ -35,13 +106,33 @@ public class ConnectFour {
 	 * @param startingPlayer The player to go first.
 	 */
 	public ConnectFour(Token startingPlayer) {
-		grid = new Token[ROWS][COLUMNS];
-		for (int i = 0; i < ROWS; i++) {
-			for (int j = 0; j < COLUMNS; j++) {
-				grid[i][j] = Token.EMPTY;
-			}
-		}
+		this(Geometry.STANDARD, startingPlayer);
+	}
+	
+	
+	
+	/**
+	 * This constructor instantiates a game of Connect Four on a grid of the
+	 * given geometry.
+	 * @param geometry The size of the grid and the number in a row to win.
+	 * @param startingPlayer The player to go first.
+	 */
+	public ConnectFour(Geometry geometry, Token startingPlayer) {
+		this.geometry = geometry;
+		rows = geometry.rows;
+		columns = geometry.columns;
+		stride = geometry.stride;
+		bitboards = new long[2];
+		heights = new int[columns];
+		moves = new int[rows * columns];
+		moveCount = 0;
+		winner = Token.EMPTY;
+		windowCounts = new int[2][geometry.windowMasks.length];
+		evaluation = 0;
+		hash = startingPlayer == Token.P2 ? geometry.zobristP2ToMove: 0;
+		mirrorHash = hash;
 		curPlayer = startingPlayer;
+		publish();
 	}
 	
 	
@@ -51,12 +142,82 @@ public class ConnectFour {
 	 * @param object The object to copy.
 	 */
 	public ConnectFour(ConnectFour object) {
-		this.grid = new Token[ROWS][COLUMNS];
-		for (int i = 0; i < ROWS; i++)
-			for (int j = 0; j < COLUMNS; j++)
-				this.grid[i][j] = object.grid[i][j];
+		this.geometry = object.geometry;
+		this.rows = object.rows;
+		this.columns = object.columns;
+		this.stride = object.stride;
+		this.bitboards = object.bitboards.clone();
+		this.heights = object.heights.clone();
+		this.moves = object.moves.clone();
+		this.moveCount = object.moveCount;
+		this.winner = object.winner;
+		this.hash = object.hash;
+		this.mirrorHash = object.mirrorHash;
+		this.windowCounts = new int[][] {object.windowCounts[0].clone(), object.windowCounts[1].clone()};
+		this.evaluation = object.evaluation;
 		this.curPlayer = object.curPlayer;
+		this.snapshot = object.snapshot;
+		copySettings(object);
+	}
+	
+	
+	
+	/**
+	 * Creates a game with the given moves already played. The position is
+	 * built without publishing a snapshot after each move, so this is much
+	 * faster than dropping the moves one by one.
+	 * @param geometry The size of the grid and the number in a row to win.
+	 * @param startingPlayer The player who moved first.
+	 * @param moves The columns played, in order.
+	 * @param count The number of moves to play from the start of moves.
+	 * @return The game.
+	 * @throws IllegalArgumentException If a move is not valid or is made
+	 * after the game is over.
+	 */
+	public static ConnectFour fromMoves(Geometry geometry, Token startingPlayer,
+			int[] moves, int count) {
+		ConnectFour game = new ConnectFour(geometry, startingPlayer);
+		for (int i = 0; i < count; i++) {
+			if (game.isOver() || !game.validColumn(moves[i]))
+				throw new IllegalArgumentException("Invalid move " + i + ": column " + moves[i]);
+			game.play(moves[i]);
+		}
+		game.publish();
+		return game;
+	}
+	
+	
+	
+	/**
+	 * Creates a game on the standard grid with the given moves already played.
+	 * @param startingPlayer The player who moved first.
+	 * @param moves The columns played, in order.
+	 * @return The game.
+	 * @throws IllegalArgumentException If a move is not valid or is made
+	 * after the game is over.
+	 */
+	public static ConnectFour fromMoves(Token startingPlayer, int... moves) {
+		return fromMoves(Geometry.STANDARD, startingPlayer, moves, moves.length);
+	}
+	
+	
+	
+	/**
+	 * Copies the computer settings of the given game into this one.
+	 * @param object The game to copy the settings of.
+	 */
+	private void copySettings(ConnectFour object) {
 		this.difficulty = object.difficulty;
+		this.maxDepth = object.maxDepth;
+		if (this.tableSize != object.tableSize) {
+			this.tableSize = object.tableSize;
+			this.table = null;
+		}
+		this.book = object.book;
+		this.tablebase = object.tablebase;
+		this.threads = object.threads;
+		this.searchMode = object.searchMode;
+		this.moveOrdering = object.moveOrdering;
 	}
 	
 	
@@ -71,6 +232,148 @@ public class ConnectFour {
 	
 	
 	
+	/**
+	 * Sets how many moves ahead the computer searches when it has no time
+	 * budget. It is MAX_DEPTH unless set.
+	 * @param maxDepth The number of moves to search ahead.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = Math.max(0, maxDepth);
+	}
+	
+	
+	
+	/**
+	 * Sets the opening book the computer plays from while the position is in
+	 * it. A book can be shared by any number of games.
+	 * @param book The opening book or null to not use one.
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		this.book = book;
+	}
+	
+	
+	
+	/**
+	 * Sets the endgame tablebase the computer plays from once the position is
+	 * in it, instead of searching. A tablebase can be shared by any number of
+	 * games.
+	 * @param tablebase The tablebase or null to not use one.
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+	
+	
+	
+	/**
+	 * Sets the number of threads the computer searches with. With more than
+	 * one thread, the search runs on copies of the game that all share this
+	 * game's transposition table, split up as set by setSearchMode.
+	 * @param threads The number of threads.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+	
+	
+	
+	/**
+	 * Sets how the computer splits its search between threads. With
+	 * ROOT_SPLIT, the columns are searched at the same time and the same
+	 * columns are found best as with one thread. With LAZY_SMP, this game
+	 * searches as it would alone while helpers search the same position, half
+	 * of them one move deeper, and fill the shared table with evaluations it
+	 * can use. The moves found can then differ from those of one thread.
+	 * @param searchMode How to split the search.
+	 */
+	public void setSearchMode(SearchMode searchMode) {
+		this.searchMode = searchMode;
+	}
+	
+	
+	
+	/**
+	 * Sets the seed used to choose between equally good moves, so that the
+	 * computer's choices can be repeated.
+	 * @param seed The seed.
+	 */
+	public void setSeed(long seed) {
+		random.setSeed(seed);
+	}
+	
+	
+	
+	/**
+	 * Sets whether the computer orders the moves it searches so that the best
+	 * ones are likely to be searched first. Without ordering, the columns are
+	 * searched from left to right. Either way the same moves are found, but
+	 * ordering lets the search skip many more positions.
+	 * @param moveOrdering Whether to order moves.
+	 */
+	public void setMoveOrdering(boolean moveOrdering) {
+		this.moveOrdering = moveOrdering;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of positions searched during the last computer move.
+	 * @return The number of positions searched.
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+	
+	
+	
+	/**
+	 * Sets the listener told about each minimax search made by the computer.
+	 * Moves from the opening book, the solver or at random are not searches.
+	 * @param listener The listener or null for none.
+	 */
+	public void setSearchListener(SearchListener listener) {
+		this.listener = listener;
+	}
+	
+	
+	
+	/**
+	 * Returns the statistics of the minimax search made for the last computer
+	 * move.
+	 * @return The statistics or null if the last move was not searched.
+	 */
+	public SearchStats getSearchStats() {
+		return stats;
+	}
+	
+	
+	
+	/**
+	 * Sets the size of the transposition table used by the computer. The
+	 * current table is discarded.
+	 * @param megabytes The size of the table in megabytes.
+	 */
+	public void setTableSize(int megabytes) {
+		this.tableSize = megabytes;
+		this.table = null;
+	}
+	
+	
+	
+	/**
+	 * Makes the computer forget every position it has evaluated, so that its
+	 * next move is searched from scratch. The tables are kept to be reused.
+	 */
+	public void clearTables() {
+		if (table != null)
+			table.clear();
+		if (solver != null)
+			solver.reset();
+	}
+	
+	
+	
 	/**
 	 * Drops a token to occupy the lowest available space in the given column
 	 * and then switches to the next player. If the game is over after this
@@ -78,11 +381,113 @@ public class ConnectFour {
 	 * @param column The column to drop the token in.
 	 */
 	public void drop(int column) {
-		if (!isOver() && validColumn(column)) {
-			grid[lowestAvailableSpace(column)][column] = curPlayer;
-		}
-		if (!isOver())
+		if (!isOver() && validColumn(column))
+			play(column);
+		else if (!isOver())
 			nextPlayer();
+		publish();
+	}
+	
+	
+	
+	/**
+	 * Returns the snapshot of the position published after the last move
+	 * made with drop. Moves played with play and undo are not published. The
+	 * snapshot can be read from any thread.
+	 * @return The snapshot.
+	 */
+	public GameSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	
+	
+	/**
+	 * Publishes a snapshot of the current position.
+	 */
+	private void publish() {
+		snapshot = new GameSnapshot(getGrid(), heights.clone(), getMoves(),
+				curPlayer, winner, hash);
+	}
+	
+	
+	
+	/**
+	 * Drops a token to occupy the lowest available space in the given column
+	 * and then switches to the next player unless the game is over. Unlike
+	 * drop, the move is not checked, so the column must be valid and the game
+	 * must not be over. The move can be taken back with undo.
+	 * @param column The column to drop the token in.
+	 */
+	public void play(int column) {
+		int player = curPlayer.ordinal();
+		int space = column * stride + heights[column];
+		bitboards[player] |= 1L << space;
+		hash ^= geometry.zobristKeys[player][space];
+		mirrorHash ^= geometry.zobristMirrorKeys[player][space];
+		updateWindows(space, player, 1);
+		heights[column]++;
+		moves[moveCount++] = column;
+		if (geometry.hasLine(bitboards[player], space))
+			winner = curPlayer;
+		else if (moveCount < rows * columns)
+			nextPlayer();
+	}
+	
+	
+	
+	/**
+	 * Takes back the last move and gives the turn back to the player who made
+	 * it. There must be at least one move to take back.
+	 */
+	public void undo() {
+		int column = moves[--moveCount];
+		heights[column]--;
+		int space = column * stride + heights[column];
+		Token player = (bitboards[Token.P1.ordinal()] & 1L << space) != 0 ? Token.P1: Token.P2;
+		if (player != curPlayer)
+			nextPlayer();
+		bitboards[player.ordinal()] &= ~(1L << space);
+		hash ^= geometry.zobristKeys[player.ordinal()][space];
+		mirrorHash ^= geometry.zobristMirrorKeys[player.ordinal()][space];
+		updateWindows(space, player.ordinal(), -1);
+		winner = Token.EMPTY;
+	}
+	
+	
+	
+	/**
+	 * Adds or removes a token in every window containing the given space and
+	 * updates the evaluation by the change in the windows' points.
+	 * @param space The bitboard space of the token.
+	 * @param player The ordinal of the token's player.
+	 * @param change 1 to add the token or -1 to remove it.
+	 */
+	private void updateWindows(int space, int player, int change) {
+		int[] p1Counts = windowCounts[Token.P1.ordinal()];
+		int[] p2Counts = windowCounts[Token.P2.ordinal()];
+		for (int window : geometry.spaceWindows[space]) {
+			evaluation -= windowPoints(p1Counts[window], p2Counts[window]);
+			windowCounts[player][window] += change;
+			evaluation += windowPoints(p1Counts[window], p2Counts[window]);
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the points a window is worth to P1 minus those it is worth to P2.
+	 * @param p1Count The number of P1 tokens in the window.
+	 * @param p2Count The number of P2 tokens in the window.
+	 * @return The points of the window.
+	 */
+	private int windowPoints(int p1Count, int p2Count) {
+		if (p2Count == 0)
+			return geometry.windowScores[p1Count];
+		else if (p1Count == 0)
+			return -geometry.windowScores[p2Count];
+		else
+			return 0;
 	}
 	
 	
@@ -92,6 +497,22 @@ public class ConnectFour {
 	 * @return The column the computer player dropped the Token into.
 	 */
 	public int computerTurn() {
+		return computerTurn(null);
+	}
+	
+	
+	
+	/**
+	 * Moves for the computer player. The computer searches one move deeper at
+	 * a time until its time budget runs out and then plays the best move of
+	 * the last search to finish. At PERFECT, the solver tries to solve the
+	 * position in half the budget before the search takes over.
+	 * @param budget The time the computer may take, or null to always search
+	 * the maximum depth ahead, or solve to the end at PERFECT.
+	 * @return The column the computer player dropped the Token into.
+	 */
+	public int computerTurn(Duration budget) {
+		stats = null;
 		int columnToDrop;
 		if (difficulty == Difficulty.EASY) {
 			columnToDrop = randomComputerMove();
@@ -101,16 +522,186 @@ public class ConnectFour {
 			if (rand.nextBoolean())
 				columnToDrop = randomComputerMove();
 			else
-				columnToDrop = aiComputerMove();
+				columnToDrop = aiComputerMove(budget);
+		}
+		else if (difficulty == Difficulty.PERFECT) {
+			columnToDrop = perfectComputerMove(budget);
 		}
 		else {
-			columnToDrop = aiComputerMove();
+			columnToDrop = aiComputerMove(budget);
 		}
 		drop(columnToDrop);
 		return columnToDrop;
 	}
 	
 	
+	/**
+	 * Computes a move for the computer player in the background without
+	 * playing it. It is searched as computerTurn() would.
+	 * @return The future result of the move.
+	 */
+	public CompletableFuture<MoveResult> computeMoveAsync() {
+		return computeMoveAsync(null);
+	}
+	
+	
+	
+	/**
+	 * Computes a move for the computer player in the background without
+	 * playing it, so this game can be used while the computer thinks. The
+	 * search runs on a copy of the current position that keeps its tables
+	 * from one move to the next, so moves computed for the same game run one
+	 * after another. Cancelling the returned future stops its minimax search
+	 * or its solver.
+	 * @param budget The time the computer may take, or null to always search
+	 * the maximum depth ahead.
+	 * @return The future result of the move.
+	 */
+	public synchronized CompletableFuture<MoveResult> computeMoveAsync(Duration budget) {
+		// Use the move found while pondering if there is one
+		if (pondering != null)
+			pondering.cancel(true);
+		MoveResult ponderedMove = ponderedMove(this);
+		if (ponderedMove != null)
+			return CompletableFuture.completedFuture(ponderedMove);
+		
+		// Otherwise, compute the move on the engine copy. Pondering may have
+		// found it just before it was cancelled.
+		CompletableFuture<MoveResult> result = new CompletableFuture<>();
+		ConnectFour position = new ConnectFour(this);
+		SearchListener listener = this.listener;
+		runOnEngine(result, engine -> {
+			MoveResult move = ponderedMove(position);
+			if (move == null) {
+				engine.loadPosition(position, listener);
+				int column = engine.computerTurn(budget);
+				move = new MoveResult(column, engine.stats);
+			}
+			result.complete(move);
+		});
+		return result;
+	}
+	
+	
+	
+	/**
+	 * Returns the move found while pondering for the given position.
+	 * @param position The position.
+	 * @return The move or null if none was found for the position.
+	 */
+	private MoveResult ponderedMove(ConnectFour position) {
+		MoveResult move = pondered.get(position.getCanonicalHash());
+		if (move == null)
+			return null;
+		return new MoveResult(position.canonicalColumn(move.getColumn()), move.getSearchStats());
+	}
+	
+	
+	
+	/**
+	 * Ponders in the background while the other player is on move, with the
+	 * replies searched as computerTurn() would.
+	 * @return The future that completes when every reply has been found.
+	 */
+	public CompletableFuture<Void> ponderAsync() {
+		return ponderAsync(null);
+	}
+	
+	
+	
+	/**
+	 * Ponders in the background while the other player is on move: for every
+	 * move they can make, the computer's reply is computed as
+	 * computeMoveAsync(budget) would and kept. Once the other player moves,
+	 * computeMoveAsync returns the kept reply at once, and what is left of the
+	 * pondering is cancelled. Pondering again forgets the kept replies.
+	 * @param budget The time the computer may take for each reply, or null to
+	 * always search the maximum depth ahead.
+	 * @return The future that completes when every reply has been found.
+	 */
+	public synchronized CompletableFuture<Void> ponderAsync(Duration budget) {
+		if (pondering != null)
+			pondering.cancel(true);
+		pondered.clear();
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		pondering = result;
+		ConnectFour position = new ConnectFour(this);
+		runOnEngine(result, engine -> {
+			// Search the replies to the most likely moves first
+			for (int n = 0; n < columns && !result.isDone(); n++) {
+				int column = geometry.centerOrder[n];
+				if (position.isOver() || !position.validColumn(column))
+					continue;
+				engine.loadPosition(position, null);
+				engine.play(column);
+				
+				// The reply to a mirror image of a move already pondered is
+				// the mirror image of that move's reply
+				long key = engine.getCanonicalHash();
+				if (engine.isOver() || pondered.containsKey(key))
+					continue;
+				boolean mirrored = key != engine.hash;
+				int reply = engine.computerTurn(budget);
+				if (mirrored)
+					reply = columns - 1 - reply;
+				if (!result.isDone())
+					pondered.put(key, new MoveResult(reply, engine.stats));
+			}
+			result.complete(null);
+		});
+		return result;
+	}
+	
+	
+	
+	/**
+	 * Runs the given work on the engine copy of this game once the work given
+	 * before it is done, unless the given future is already done by then.
+	 * While the work runs, cancelling the future stops the engine's search.
+	 * @param result The future the work completes.
+	 * @param work The work.
+	 */
+	private void runOnEngine(CompletableFuture<?> result, Consumer<ConnectFour> work) {
+		if (engine == null) {
+			engine = new ConnectFour(this);
+			engine.random = random;
+		}
+		ConnectFour engine = this.engine;
+		engineIdle = engineIdle.handleAsync((previous, exception) -> {
+			// Skip the work if it was cancelled while waiting
+			engine.request = result;
+			if (result.isDone())
+				return null;
+			try {
+				work.accept(engine);
+			}
+			catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+			finally {
+				engine.request = null;
+			}
+			return null;
+		}, SearchExecutor.get());
+	}
+	
+	
+	
+	/**
+	 * Sets this engine copy up to compute moves for the given position with
+	 * the settings of the game it was copied from.
+	 * @param position A copy of the game.
+	 * @param listener The listener to tell about searches or null for none.
+	 */
+	private void loadPosition(ConnectFour position, SearchListener listener) {
+		setPosition(position);
+		copySettings(position);
+		this.listener = listener;
+	}
+	
+	
+	
+	
 	/**
 	 * Returns a column for the computer to drop a token in. It is randomly
 	 * selected among the valid moves.
@@ -119,7 +710,7 @@ public class ConnectFour {
 	private int randomComputerMove() {
 		Random rand = new Random();
 		ArrayList<Integer> validColumns = new ArrayList<>();
-		for (int i = 0; i < COLUMNS; i++)
+		for (int i = 0; i < columns; i++)
 			if (validColumn(i))
 				validColumns.add(i);
 		return validColumns.get(rand.nextInt(validColumns.size()));
@@ -127,254 +718,653 @@ public class ConnectFour {
 	
 	
 	
+	/**
+	 * Returns the column the opening book gives for the position. The book
+	 * only has positions on the standard grid.
+	 * @return The column or -1 if there is no book or the position is not in it.
+	 */
+	private int bookComputerMove() {
+		if (book == null || geometry != Geometry.STANDARD)
+			return -1;
+		return book.bestMove(this);
+	}
+	
+	
+	
+	/**
+	 * Returns the column the tablebase gives for the position. The tablebase
+	 * only has positions on the standard grid.
+	 * @return The column or -1 if there is no tablebase or the position is
+	 * not in it.
+	 */
+	private int tablebaseComputerMove() {
+		if (tablebase == null || geometry != Geometry.STANDARD)
+			return -1;
+		return tablebase.bestMove(this);
+	}
+	
+	
+	
+	/**
+	 * Returns a column for the computer to drop a token in. It is the column
+	 * closest to the center with the best exact score from the solver. With a
+	 * time budget, the solver gets half of it, and if it cannot solve the
+	 * position by then, the column is found by the minimax search in the
+	 * rest. The solver only works on the standard grid, so on other grids the
+	 * column is always found by the minimax search. Cancelling the move
+	 * stops the solver too.
+	 * @param budget The time the move may take, or null to solve the position
+	 * to the end unless the move is cancelled.
+	 * @return The column the computer player is to drop the Token into.
+	 */
+	private int perfectComputerMove(Duration budget) {
+		if (geometry != Geometry.STANDARD)
+			return aiComputerMove(budget);
+		int bookMove = bookComputerMove();
+		if (bookMove >= 0)
+			return bookMove;
+		int tablebaseMove = tablebaseComputerMove();
+		if (tablebaseMove >= 0)
+			return tablebaseMove;
+		if (solver == null) {
+			solver = new Solver();
+			solver.setStopCondition(this::shouldStop);
+		}
+		
+		// Give up on solving once half the budget is spent or the move is
+		// cancelled
+		long start = System.nanoTime();
+		if (budget != null) {
+			deadline = start + budget.toNanos() / 2;
+			timed = true;
+		}
+		int column = solver.bestMove(this);
+		timed = false;
+		if (column >= 0)
+			return column;
+		
+		// A cancelled move without a budget is thrown away, so any move will do
+		if (budget == null)
+			return aiComputerMove(Duration.ZERO);
+		return aiComputerMove(budget.minusNanos(System.nanoTime() - start));
+	}
+	
+	
+	
 	/**
 	 * Returns a column for the computer to drop a token in. It is selected
-	 * by a minimax algorithm.
+	 * by a minimax algorithm. Without a time budget, the search goes maxDepth
+	 * moves ahead. With one, it uses iterative deepening: each search goes one
+	 * move deeper than the last and starts with the columns that the last one
+	 * found best, until the deadline passes or the outcome is certain.
+	 * @param budget The time the search may take or null.
+	 * @return The column the computer player is to drop the Token into.
+	 */
+	private int aiComputerMove(Duration budget) {
+		// Play from the opening book or the tablebase if the position is in
+		// one of them
+		int bookMove = bookComputerMove();
+		if (bookMove >= 0)
+			return bookMove;
+		int tablebaseMove = tablebaseComputerMove();
+		if (tablebaseMove >= 0)
+			return tablebaseMove;
+		
+		// Set up the search
+		long start = System.nanoTime();
+		prepareSearch();
+		table.newSearch();
+		for (int i = 0; i < columns; i++)
+			rootOrder[i] = moveOrdering ? geometry.centerOrder[i]: i;
+		
+		// Search to a fixed depth if there is no time budget
+		int columnToDrop;
+		if (budget == null)
+			columnToDrop = searchRoot(maxDepth);
+		
+		// Otherwise, keep searching deeper until the deadline passes. The
+		// shallowest search always finishes so that there is a move to play.
+		else {
+			columnToDrop = searchRoot(0);
+			deadline = start + budget.toNanos();
+			timed = true;
+			for (int depth = 1; depth < rows * columns - moveCount; depth++) {
+				int bestEval = rootScores[rootOrder[0]];
+				if (bestEval > Integer.MAX_VALUE - rows * columns ||
+						bestEval < Integer.MIN_VALUE + rows * columns)
+					break;
+				int column = searchRoot(depth);
+				if (timeUp)
+					break;
+				columnToDrop = column;
+			}
+			timed = false;
+		}
+		
+		// Report the statistics of the search
+		stats = new SearchStats(nodes, cutoffs, firstMoveCutoffs, tableProbes,
+				tableHits, depthReached, finishedScores, System.nanoTime() - start);
+		if (listener != null)
+			listener.searchFinished(stats);
+		return columnToDrop;
+	}
+	
+	
+	
+	/**
+	 * Creates the transposition table and search buffers if needed and
+	 * resets the search state for a new computer move.
+	 */
+	private void prepareSearch() {
+		if (table == null)
+			table = new TranspositionTable(tableSize);
+		if (rootOrder == null) {
+			rootOrder = new int[columns];
+			rootScores = new int[columns];
+			finishedScores = new int[columns];
+			moveBuffers = new int[rows * columns][columns];
+			killers = new int[rows * columns][2];
+			history = new int[2][columns * stride];
+		}
+		for (int[] depthKillers : killers)
+			Arrays.fill(depthKillers, -1);
+		for (int[] playerHistory : history)
+			for (int i = 0; i < playerHistory.length; i++)
+				playerHistory[i] /= 2;
+		nodes = 0;
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+		tableProbes = 0;
+		tableHits = 0;
+		timeUp = false;
+		stopHelpers = false;
+	}
+	
+	
+	
+	/**
+	 * Evaluates every column to the given depth and returns one of the best.
+	 * Afterwards, the columns are ordered from best to worst for the next
+	 * search.
+	 * @param depth The depth to search to.
 	 * @return The column the computer player is to drop the Token into.
 	 */
-	private int aiComputerMove() {
-		// Column of best move
+	private int searchRoot(int depth) {
+		// Evaluate the columns
+		searchDepth = depth;
+		for (int i = 0; i < columns; i++)
+			rootScores[i] = Integer.MIN_VALUE;
+		if (threads == 1)
+			searchColumns();
+		else if (searchMode == SearchMode.ROOT_SPLIT)
+			parallelSearchColumns();
+		else
+			lazySmpSearchColumns();
+		if (timeUp)
+			return -1;
+		depthReached = depth;
+		System.arraycopy(rootScores, 0, finishedScores, 0, columns);
+		
+		// Order the columns from best to worst for the next search
+		for (int n = 1; n < columns; n++) {
+			int column = rootOrder[n];
+			int m = n;
+			while (m > 0 && rootScores[rootOrder[m - 1]] < rootScores[column]) {
+				rootOrder[m] = rootOrder[m - 1];
+				m--;
+			}
+			rootOrder[m] = column;
+		}
+		
+		// Return one of the best moves
+		int maxEval = rootScores[rootOrder[0]];
 		ArrayList<Integer> bestMoveCols = new ArrayList<>();
-		bestMoveCols.add(0);
-		int a = Integer.MIN_VALUE;
-		int b = Integer.MAX_VALUE;
+		for (int i = 0; i < columns; i++)
+			if (validColumn(i) && rootScores[i] == maxEval)
+				bestMoveCols.add(i);
+		return bestMoveCols.get(random.nextInt(bestMoveCols.size()));
+	}
+	
+	
+	
+	/**
+	 * Evaluates the columns one after another. Each column is searched just
+	 * below the best evaluation so far, so columns as good as the best get
+	 * exact evaluations and worse ones get upper bounds.
+	 */
+	private void searchColumns() {
+		Token computer = curPlayer;
 		int maxEval = Integer.MIN_VALUE;
-		for (int i = 0; i < COLUMNS; i++) {
+		for (int n = 0; n < columns; n++) {
+			int i = rootOrder[n];
 			if (validColumn(i)) {
-				ConnectFour newTempGame = new ConnectFour(this);
-				newTempGame.drop(i);
-				int eval = minimax(newTempGame, 0, a, b, false);
-				System.out.printf("%12d", eval);
-				if (eval > maxEval) {
-					maxEval = eval;
-					bestMoveCols.clear();
-					bestMoveCols.add(i);
+				int a = maxEval == Integer.MIN_VALUE ? maxEval: maxEval - 1;
+				play(i);
+				int eval = minimax(computer, 0, a, Integer.MAX_VALUE, false);
+				undo();
+				if (timeUp)
+					return;
+				rootScores[i] = eval;
+				maxEval = Math.max(maxEval, eval);
+			}
+		}
+	}
+	
+	
+	
+	/**
+	 * Evaluates the columns at the same time on helper copies of the game, one
+	 * task per column. The best evaluation found so far is shared, so like in
+	 * searchColumns, columns as good as the best get exact evaluations.
+	 */
+	private void parallelSearchColumns() {
+		Token computer = curPlayer;
+		ForkJoinPool pool = POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+		AtomicInteger maxEval = new AtomicInteger(Integer.MIN_VALUE);
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[columns];
+		for (int n = 0; n < columns; n++) {
+			int column = rootOrder[n];
+			if (!validColumn(column))
+				continue;
+			tasks[column] = pool.submit(() -> {
+				ConnectFour helper = borrowHelper();
+				helper.searchDepth = searchDepth;
+				
+				// Search the column
+				int best = maxEval.get();
+				int a = best == Integer.MIN_VALUE ? best: best - 1;
+				helper.play(column);
+				int eval = helper.minimax(computer, 0, a, Integer.MAX_VALUE, false);
+				helper.undo();
+				if (!helper.timeUp) {
+					rootScores[column] = eval;
+					maxEval.accumulateAndGet(eval, Math::max);
 				}
-				else if (eval == maxEval) {
-					bestMoveCols.add(i);
+				synchronized (this) {
+					addCounts(helper);
+					timeUp |= helper.timeUp;
 				}
-				// Prune away unnecessary branches
-				a = Math.max(a, maxEval);
-				if (maxEval >= b)
-					break;
-			}
+				helpers.add(helper);
+			});
 		}
-		System.out.println();
-
-		// Return the move
-		Random rand = new Random();
-		return bestMoveCols.get(rand.nextInt(bestMoveCols.size()));
+		for (ForkJoinTask<?> task : tasks)
+			if (task != null)
+				task.join();
+	}
+	
+	
+	
+	/**
+	 * Evaluates the columns on this game while helper copies search the same
+	 * position. Half of the helpers start one move deeper than this game, and
+	 * each starts with a different column, so that they reach different
+	 * positions first. Every helper keeps going deeper until this game is done.
+	 * They only help by storing evaluations in the shared table.
+	 */
+	private void lazySmpSearchColumns() {
+		ForkJoinPool pool = POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+		stopHelpers = false;
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threads - 1];
+		for (int t = 1; t < threads; t++) {
+			// Copy the position before this game starts playing moves on it
+			int id = t;
+			ConnectFour helper = borrowHelper();
+			tasks[t - 1] = pool.submit(() -> {
+				for (int n = 0; n < columns; n++)
+					helper.rootOrder[n] = rootOrder[(n + id) % columns];
+				for (int depth = searchDepth + id % 2;
+						!helper.timeUp && depth < rows * columns - moveCount; depth++) {
+					helper.searchDepth = depth;
+					helper.searchColumns();
+				}
+				synchronized (this) {
+					addCounts(helper);
+				}
+				helpers.add(helper);
+			});
+		}
+		searchColumns();
+		stopHelpers = true;
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+	}
+	
+	
+	
+	/**
+	 * Returns a helper copy of this game ready to search its position with
+	 * its table, reusing an idle one if there is one.
+	 * @return The helper.
+	 */
+	private ConnectFour borrowHelper() {
+		ConnectFour helper;
+		synchronized (this) {
+			if (helpers == null)
+				helpers = new ConcurrentLinkedQueue<>();
+			helper = helpers.poll();
+		}
+		if (helper == null)
+			helper = new ConnectFour(this);
+		else
+			helper.setPosition(this);
+		helper.table = table;
+		helper.master = this;
+		helper.prepareSearch();
+		helper.timed = timed;
+		helper.deadline = deadline;
+		return helper;
+	}
+	
+	
+	
+	/**
+	 * Adds the counts of positions, cutoffs and lookups of the given helper's
+	 * search to this game's.
+	 * @param helper The helper.
+	 */
+	private void addCounts(ConnectFour helper) {
+		nodes += helper.nodes;
+		cutoffs += helper.cutoffs;
+		firstMoveCutoffs += helper.firstMoveCutoffs;
+		tableProbes += helper.tableProbes;
+		tableHits += helper.tableHits;
+	}
+	
+	
+	
+	/**
+	 * Copies the position of the given game into this one without creating
+	 * new arrays.
+	 * @param object The game to copy the position of.
+	 */
+	private void setPosition(ConnectFour object) {
+		System.arraycopy(object.bitboards, 0, bitboards, 0, bitboards.length);
+		System.arraycopy(object.heights, 0, heights, 0, heights.length);
+		System.arraycopy(object.moves, 0, moves, 0, object.moveCount);
+		moveCount = object.moveCount;
+		winner = object.winner;
+		hash = object.hash;
+		mirrorHash = object.mirrorHash;
+		for (int i = 0; i < windowCounts.length; i++)
+			System.arraycopy(object.windowCounts[i], 0, windowCounts[i], 0, geometry.windowMasks.length);
+		evaluation = object.evaluation;
+		curPlayer = object.curPlayer;
 	}
 	
 	
 	
 	/**
 	 * A function returning an evaluation using the minimax algorithm. It is enhanced
-	 * by also using alpha-beta pruning.
-	 * @param tempGrid A temporary grid to keep track of hypothetical moves.
+	 * by also using alpha-beta pruning. Hypothetical moves are played on this
+	 * game and taken back before returning, so no copies are made.
+	 * @param computer The player the evaluation is for.
 	 * @param depth The depth of the move.
 	 * @param a The alpha value.
 	 * @param b The beta value.
 	 * @param maximizingPlayer If the hypothetical player is the maximizing player
 	 * @return
 	 */
-	private int minimax(ConnectFour tempGame, int depth, int a, int b, boolean maximizingPlayer) {
+	private int minimax(Token computer, int depth, int a, int b, boolean maximizingPlayer) {
+		// Stop searching once the deadline has passed, the move is cancelled
+		// or, for a helper, once the game it is helping is done
+		nodes++;
+		if ((nodes & 1023) == 0 && shouldStop())
+			timeUp = true;
+		if (timeUp)
+			return 0;
+		
 		// Return the heuristic value if node is leaf
-		Token result = tempGame.isOver() ? tempGame.getWinner(): null;
+		Token result = isOver() ? getWinner(): null;
 		if (result != null) {
 			int eval;
-			if (result.equals(curPlayer))
+			if (result.equals(computer))
 				eval = Integer.MAX_VALUE - depth;
-			else if (result.equals(curPlayer == Token.P1 ? Token.P2: Token.P1))
+			else if (result.equals(computer == Token.P1 ? Token.P2: Token.P1))
 				eval = Integer.MIN_VALUE + depth;
 			else {
 				eval = 0;
 			}
 			return eval;
 		}
-		else if (depth >= MAX_DEPTH) {
-			int score = tempGame.scoreBoard(LINE_LENGTH, 0);
+		else if (depth >= searchDepth) {
+			int score = computer == Token.P1 ? evaluation: -evaluation;
 			return score;
 		}
 		
+		// Use the evaluation from the transposition table if it was searched
+		// deep enough. Evaluations are from the computer's point of view, so
+		// the hash is flipped to keep them apart from the other player's. A
+		// position shares its entry with its mirror image, and the best move
+		// is stored as seen in the canonical image.
+		long key = computer == Token.P1 ? getCanonicalHash(): ~getCanonicalHash();
+		int remainingDepth = searchDepth - depth;
+		long entry = table.probe(key);
+		tableProbes++;
+		if (entry != 0)
+			tableHits++;
+		int tableMove = entry != 0 ? canonicalColumn(TranspositionTable.getBestMove(entry)): -1;
+		if (entry != 0 && TranspositionTable.getDepth(entry) >= remainingDepth) {
+			int eval = fromTableScore(TranspositionTable.getScore(entry), depth);
+			switch (TranspositionTable.getBound(entry)) {
+			case EXACT:
+				return eval;
+			case LOWER:
+				a = Math.max(a, eval);
+				break;
+			case UPPER:
+				b = Math.min(b, eval);
+				break;
+			}
+			if (a >= b)
+				return eval;
+		}
+		
+		// Order the moves to search the best ones first
+		int[] columns = moveBuffers[depth];
+		int columnCount = orderMoves(columns, depth, tableMove);
+		int originalA = a;
+		int originalB = b;
+		int bestMove = -1;
+		int maxEval;
+		
 		// Maximizing player
 		if (maximizingPlayer) {
-			int maxEval = Integer.MIN_VALUE;
-			for (int i = 0; i < COLUMNS; i++) {
-				if (tempGame.validColumn(i)) {
-					ConnectFour newTempGame = new ConnectFour(tempGame);
-					newTempGame.drop(i);
-					int eval = minimax(newTempGame, depth + 1, a, b, false);
-					maxEval = Math.max(maxEval, eval);
-					// Prune away unnecessary branches
-					a = Math.max(a, maxEval);
-					if (maxEval >= b)
-						break;
+			maxEval = Integer.MIN_VALUE;
+			for (int n = 0; n < columnCount; n++) {
+				int i = columns[n];
+				play(i);
+				int eval = minimax(computer, depth + 1, a, b, false);
+				undo();
+				if (eval > maxEval) {
+					maxEval = eval;
+					bestMove = i;
+				}
+				// Prune away unnecessary branches
+				a = Math.max(a, maxEval);
+				if (maxEval >= b) {
+					recordCutoff(i, depth, remainingDepth);
+					cutoffs++;
+					if (n == 0)
+						firstMoveCutoffs++;
+					break;
 				}
 			}
-			return maxEval;
 		}
 		
 		// Minimizing player
 		else {
-			int maxEval = Integer.MAX_VALUE;
-			for (int i = 0; i < COLUMNS; i++) {
-				if (tempGame.validColumn(i)) {
-					ConnectFour newTempGame = new ConnectFour(tempGame);
-					newTempGame.drop(i);
-					int eval = minimax(newTempGame, depth + 1, a, b, true);
-					maxEval = Math.min(maxEval, eval);
-					// Prune away unnecessary branches
-					b = Math.min(b, maxEval);
-					if (maxEval <= a)
-						break;
+			maxEval = Integer.MAX_VALUE;
+			for (int n = 0; n < columnCount; n++) {
+				int i = columns[n];
+				play(i);
+				int eval = minimax(computer, depth + 1, a, b, true);
+				undo();
+				if (eval < maxEval) {
+					maxEval = eval;
+					bestMove = i;
+				}
+				// Prune away unnecessary branches
+				b = Math.min(b, maxEval);
+				if (maxEval <= a) {
+					recordCutoff(i, depth, remainingDepth);
+					cutoffs++;
+					if (n == 0)
+						firstMoveCutoffs++;
+					break;
 				}
 			}
-			return maxEval;
 		}
+		
+		// An unfinished search is not stored
+		if (timeUp)
+			return maxEval;
+		
+		// Store the evaluation in the transposition table
+		TranspositionTable.Bound bound;
+		if (maxEval <= originalA)
+			bound = TranspositionTable.Bound.UPPER;
+		else if (maxEval >= originalB)
+			bound = TranspositionTable.Bound.LOWER;
+		else
+			bound = TranspositionTable.Bound.EXACT;
+		table.store(key, toTableScore(maxEval, depth), bound, remainingDepth,
+				canonicalColumn(bestMove));
+		return maxEval;
 	}
 	
 	
 	
-	private int scoreBoard(int inARow, int points) {
-		Token lastPlayer;	// To hold the current player token
-		int inARowCount;	// To hold the number of same tokens in a row
-		
-		int pointValue = 1000;
-		for (int i = inARow; i < LINE_LENGTH; i++)
-			pointValue /= 10;
-		
-		// Check the rows
-		for (int row = 0; row < ROWS; row++) {
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			for (int column = 0; column < COLUMNS; column++) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == inARow) {
-					points += pointValue;
-				}
-			}
+	/**
+	 * Returns whether the search has to stop before it is finished.
+	 * @return Whether to stop.
+	 */
+	private boolean shouldStop() {
+		if (timed && System.nanoTime() - deadline >= 0)
+			return true;
+		if (master != null && master.stopHelpers)
+			return true;
+		CompletableFuture<?> request = master != null ? master.request: this.request;
+		return request != null && request.isCancelled();
+	}
+	
+	
+	
+	/**
+	 * Fills the given array with the valid columns in the order they should be
+	 * searched: the best move from the transposition table, then the killer
+	 * moves of the depth, then the rest by how many cutoffs they have caused,
+	 * breaking ties from the center outwards.
+	 * @param columns The array to fill.
+	 * @param depth The depth of the position.
+	 * @param tableMove The best move from the transposition table or -1.
+	 * @return The number of valid columns.
+	 */
+	private int orderMoves(int[] columns, int depth, int tableMove) {
+		int count = 0;
+		if (!moveOrdering) {
+			for (int i = 0; i < this.columns; i++)
+				if (validColumn(i))
+					columns[count++] = i;
+			return count;
 		}
 		
-		// Check the columns
-		for (int column = 0; column < COLUMNS; column++) {
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			for (int row = 0; row < ROWS; row++) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == inARow) {
-					points += pointValue;
-				}
-			}
-		}
+		// Add the best move from the table and the killer moves
+		if (tableMove >= 0 && validColumn(tableMove))
+			columns[count++] = tableMove;
+		for (int killer : killers[depth])
+			if (killer >= 0 && validColumn(killer) && !contains(columns, count, killer))
+				columns[count++] = killer;
 		
-		// Check the diagonals
-		for (int i = ROWS - LINE_LENGTH; i > 0; i--) {
-			int row = i;
-			int column = 0;
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			
-			while (row < ROWS && column < COLUMNS) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == inARow) {
-					points += pointValue;
-				}
-				
-				row++;
-				column++;
-			}
-		}
-		for (int i = 0; i <= COLUMNS - LINE_LENGTH; i++) {
-			int row = 0;
-			int column = i;
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			
-			while (row < ROWS && column < COLUMNS) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == inARow) {
-					points += pointValue;
+		// Insert the rest by their history scores
+		int sortedStart = count;
+		int[] playerHistory = history[curPlayer.ordinal()];
+		for (int column : geometry.centerOrder) {
+			if (validColumn(column) && !contains(columns, count, column)) {
+				int score = playerHistory[column * stride + heights[column]];
+				int m = count++;
+				while (m > sortedStart && playerHistory[columns[m - 1] * stride +
+						heights[columns[m - 1]]] < score) {
+					columns[m] = columns[m - 1];
+					m--;
 				}
-				
-				row++;
-				column++;
+				columns[m] = column;
 			}
 		}
-		for (int i = ROWS - LINE_LENGTH; i > 0; i--) {
-			int row = i;
-			int column = COLUMNS - 1;
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			
-			while (row < ROWS && column >= 0) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == inARow) {
-					points += pointValue;
-				}
-				
-				row++;
-				column--;
-			}
-		}
-		for (int i = COLUMNS - 1; i >= LINE_LENGTH; i--) {
-			int row = 0;
-			int column = i;
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			
-			while (row < ROWS && column >= 0) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == inARow) {
-					points += pointValue;
-				}
-				
-				row++;
-				column--;
-			}
+		return count;
+	}
+	
+	
+	
+	/**
+	 * Returns whether the first elements of the given array contain a column.
+	 * @param columns The array.
+	 * @param count The number of elements to check.
+	 * @param column The column.
+	 * @return Whether the column is found.
+	 */
+	private static boolean contains(int[] columns, int count, int column) {
+		for (int i = 0; i < count; i++)
+			if (columns[i] == column)
+				return true;
+		return false;
+	}
+	
+	
+	
+	/**
+	 * Remembers a move that caused a cutoff as a killer move for its depth and
+	 * adds to its history score. Deeper cutoffs save more work, so they add
+	 * more to the history score. The move has already been taken back, so the
+	 * current player is the one who made it.
+	 * @param column The column of the move.
+	 * @param depth The depth of the position the move was made from.
+	 * @param remainingDepth The depth left to search from the position.
+	 */
+	private void recordCutoff(int column, int depth, int remainingDepth) {
+		if (!moveOrdering)
+			return;
+		int[] depthKillers = killers[depth];
+		if (depthKillers[0] != column) {
+			depthKillers[1] = depthKillers[0];
+			depthKillers[0] = column;
 		}
-		
-		// Return the score
-		if (inARow == 1)
-			return points;
-		else
-			return scoreBoard(inARow - 1, points);
+		history[curPlayer.ordinal()][column * stride + heights[column]] +=
+				remainingDepth * remainingDepth;
+	}
+	
+	
+	
+	/**
+	 * Converts an evaluation to be stored in the transposition table. Wins and
+	 * losses are scored by the depth they happen at, so they are stored
+	 * relative to the position instead of the root of the search.
+	 * @param eval The evaluation.
+	 * @param depth The depth of the position.
+	 * @return The evaluation to store.
+	 */
+	private int toTableScore(int eval, int depth) {
+		if (eval > Integer.MAX_VALUE - rows * columns)
+			return eval + depth;
+		else if (eval < Integer.MIN_VALUE + rows * columns)
+			return eval - depth;
+		return eval;
+	}
+	
+	
+	
+	/**
+	 * Converts an evaluation stored in the transposition table back to one
+	 * relative to the root of the search.
+	 * @param score The stored evaluation.
+	 * @param depth The depth of the position.
+	 * @return The evaluation.
+	 */
+	private int fromTableScore(int score, int depth) {
+		if (score > Integer.MAX_VALUE - rows * columns)
+			return score - depth;
+		else if (score < Integer.MIN_VALUE + rows * columns)
+			return score + depth;
+		return score;
 	}
 	
 	
@@ -392,11 +1382,11 @@ public class ConnectFour {
 			validColumn = false;
 		
 		// Column is not valid if more than the highest index
-		else if (column >= COLUMNS)
+		else if (column >= columns)
 			validColumn = false;
 		
 		// Column is not valid if already full
-		else if (lowestAvailableSpace(column) < 0)
+		else if (heights[column] >= rows)
 			validColumn = false;
 		
 		return validColumn;
@@ -405,15 +1395,115 @@ public class ConnectFour {
 	
 	
 	/**
-	 * Returns the rack grid.
+	 * Returns the rack grid. The grid is built from the bitboards, so changes
+	 * made to it do not affect the game.
 	 * @return The rack grid.
 	 */
 	public Token[][] getGrid() {
+		Token[][] grid = new Token[rows][columns];
+		for (int row = 0; row < rows; row++)
+			for (int column = 0; column < columns; column++)
+				grid[row][column] = tokenAt(row, column);
 		return grid;
 	}
 	
 	
 	
+	/**
+	 * Returns the token occupying the given space of the rack grid.
+	 * @param row The row, counting down from the top.
+	 * @param column The column.
+	 * @return The token in the space or EMPTY if the space is empty.
+	 */
+	private Token tokenAt(int row, int column) {
+		long space = 1L << (column * stride + rows - 1 - row);
+		if ((bitboards[Token.P1.ordinal()] & space) != 0)
+			return Token.P1;
+		else if ((bitboards[Token.P2.ordinal()] & space) != 0)
+			return Token.P2;
+		else
+			return Token.EMPTY;
+	}
+	
+	
+	
+	/**
+	 * Returns the columns played so far, in order.
+	 * @return The columns played.
+	 */
+	public int[] getMoves() {
+		return Arrays.copyOf(moves, moveCount);
+	}
+	
+	
+	
+	/**
+	 * Returns the number of moves played so far.
+	 * @return The number of moves.
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+	
+	
+	
+	/**
+	 * Returns the array the moves are kept in, without copying it. Only the
+	 * first getMoveCount() columns are moves.
+	 * @return The array of moves.
+	 */
+	int[] moveArray() {
+		return moves;
+	}
+	
+	
+	
+	/**
+	 * Returns the player who moved first. This is the owner of the token at
+	 * the bottom of the first column played.
+	 * @return The Token of the starting player.
+	 */
+	public Token getStartingPlayer() {
+		if (moveCount == 0)
+			return curPlayer;
+		return (bitboards[Token.P1.ordinal()] & 1L << moves[0] * stride) != 0 ? Token.P1: Token.P2;
+	}
+	
+	
+	
+	/**
+	 * Returns the Zobrist hash of the position. Positions with the same tokens
+	 * and the same player on move have the same hash.
+	 * @return The hash of the position.
+	 */
+	public long getHash() {
+		return hash;
+	}
+	
+	
+	
+	/**
+	 * Returns the smaller of the Zobrist hashes of the position and of its
+	 * mirror image. A position and its mirror image play the same, so they
+	 * have the same canonical hash and can share what is known about them.
+	 * @return The canonical hash of the position.
+	 */
+	public long getCanonicalHash() {
+		return Math.min(hash, mirrorHash);
+	}
+	
+	
+	
+	/**
+	 * Returns the size of the grid and the number in a row needed to win.
+	 * @return The geometry of the game.
+	 */
+	public Geometry getGeometry() {
+		return geometry;
+	}
+	
+	
+	
 	/**
 	 * Returns the Token of the current player.
 	 * @return The Token of the current player.
@@ -430,137 +1520,7 @@ public class ConnectFour {
 	 * @return The Token type of the winner or EMPTY if no one has won yet.
 	 */
 	public Token getWinner() {
-		Token lastPlayer;	// To hold the current player token
-		int inARowCount;	// To hold the number of same tokens in a row
-		
-		// Check the rows
-		for (int row = 0; row < ROWS; row++) {
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			for (int column = 0; column < COLUMNS; column++) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == LINE_LENGTH) {
-					return lastPlayer;
-				}
-			}
-		}
-		
-		// Check the columns
-		for (int column = 0; column < COLUMNS; column++) {
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			for (int row = 0; row < ROWS; row++) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == LINE_LENGTH) {
-					return lastPlayer;
-				}
-			}
-		}
-		
-		// Check the diagonals
-		for (int i = ROWS - LINE_LENGTH; i > 0; i--) {
-			int row = i;
-			int column = 0;
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			
-			while (row < ROWS && column < COLUMNS) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == LINE_LENGTH) {
-					return lastPlayer;
-				}
-				
-				row++;
-				column++;
-			}
-		}
-		for (int i = 0; i <= COLUMNS - LINE_LENGTH; i++) {
-			int row = 0;
-			int column = i;
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			
-			while (row < ROWS && column < COLUMNS) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == LINE_LENGTH) {
-					return lastPlayer;
-				}
-				
-				row++;
-				column++;
-			}
-		}
-		for (int i = ROWS - LINE_LENGTH; i > 0; i--) {
-			int row = i;
-			int column = COLUMNS - 1;
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			
-			while (row < ROWS && column >= 0) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == LINE_LENGTH) {
-					return lastPlayer;
-				}
-				
-				row++;
-				column--;
-			}
-		}
-		for (int i = COLUMNS - 1; i >= LINE_LENGTH; i--) {
-			int row = 0;
-			int column = i;
-			lastPlayer = Token.EMPTY;
-			inARowCount = 0;
-			
-			while (row < ROWS && column >= 0) {
-				if (grid[row][column] != lastPlayer) {
-					inARowCount = 0;
-					lastPlayer = grid[row][column];
-				}
-				if (grid[row][column] != Token.EMPTY) {
-					inARowCount++;
-				}
-				if (inARowCount == LINE_LENGTH) {
-					return lastPlayer;
-				}
-				
-				row++;
-				column--;
-			}
-		}
-		
-		// Return empty if no one has won yet.
-		return Token.EMPTY;
+		return winner;
 	}
 	
 	
@@ -570,29 +1530,7 @@ public class ConnectFour {
 	 * @return true if the game is over or false otherwise.
 	 */
 	public boolean isOver() {
-		boolean isOver = false;
-		
-		// Find out if a player has won. If so, the game is over
-		if (getWinner() != Token.EMPTY) {
-			isOver = true;
-		}
-		
-		// Find out if the board is full and there is a tied game. If so,
-		// the game is over.
-		else {
-			isOver = true;
-			outerLoop: for (int i = 0; i < ROWS; i++) {
-				for (int j = 0; j < COLUMNS; j++ ) {
-					if (grid[i][j] == Token.EMPTY) {
-						isOver = false;
-						break outerLoop;
-					}
-				}
-			}
-		}
-		
-		// Return the finding.
-		return isOver;
+		return winner != Token.EMPTY || moveCount == rows * columns;
 	}
 	
 	
@@ -603,13 +1541,7 @@ public class ConnectFour {
 	 * @return The lowest available row or -1 if full.
 	 */
 	public int lowestAvailableSpace(int column) {
-		int space = ROWS - 1;
-		
-		while (space >= 0 && grid[space][column] != Token.EMPTY) {
-			space--;
-		}
-		
-		return space;
+		return rows - 1 - heights[column];
 	}
 	
 	
@@ -624,6 +1556,21 @@ public class ConnectFour {
 		else {
 			curPlayer = Token.P1;
 		}
+		hash ^= geometry.zobristP2ToMove;
+		mirrorHash ^= geometry.zobristP2ToMove;
+	}
+	
+	
+	
+	/**
+	 * Returns the column that the given column is mirrored onto if the
+	 * position's canonical image is its mirror image, or the column itself
+	 * otherwise. Mirroring twice gives back the column.
+	 * @param column The column or -1 for none.
+	 * @return The column in the other image or -1 for none.
+	 */
+	private int canonicalColumn(int column) {
+		return column >= 0 && mirrorHash < hash ? columns - 1 - column: column;
 	}
 	
 }
@@ -1,11 +1,13 @@
 package tech.octopusdragon.connectfour;
 
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import javafx.animation.TranslateTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.concurrent.Task;
 import javafx.event.EventHandler;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
@@ -32,8 +34,6 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.RowConstraints;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
-import javafx.scene.media.Media;
-import javafx.scene.media.MediaPlayer;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
@@ -46,9 +46,14 @@ public class ConnectFourApplication extends Application {
 	private final double DIALOG_WIDTH = 500.0;	// Width of new game dialog box
 	private final double DIALOG_HEIGHT = 200.0;	// Height of new game dialog box
 	private final int WAIT_TIME = 500;	// Millis to wait before computer moves
+	private final java.time.Duration PERFECT_BUDGET = java.time.Duration.ofSeconds(3);	// Time for a perfect move
 	
 	// Variables
 	private ConnectFour game;	// The game
+	private OpeningBook book;	// The opening book, if there is one
+	private Tablebase tablebase;	// The endgame tablebase, if there is one
+	private CompletableFuture<MoveResult> computerMove;	// Move being computed
+	private CompletableFuture<Void> pondering;	// Pondering on the player's turn
 	private boolean playing;	// Indicates whether an animation is playing
 	private boolean singlePlayer;	// Indicates single player game
 	private Token playerToken;	// Player's token in a single player game
@@ -67,33 +72,35 @@ public class ConnectFourApplication extends Application {
 	private ImageView[][] backImages;
 	private GridPane rackVBox;
 	private ImageView curPlayerImageView;	// To hold the current player
-	private final Image P1_IMAGE = new Image(ConnectFourApplication.class.getClassLoader().getResourceAsStream("p1_token.png"));
+	private AssetCache assets;	// Decoded images, shared by the whole game
+	private Image p1Image;	// P1's token
 	private final String P1_COLOR = "Red";
-	private final Image P2_IMAGE = new Image(ConnectFourApplication.class.getClassLoader().getResourceAsStream("p2_token.png"));
+	private Image p2Image;	// P2's token
 	private final String P2_COLOR = "Yellow";
-	private final Image BACKGROUND_IMAGE = new Image(ConnectFourApplication.class.getClassLoader().getResourceAsStream("background.jpg"));
-	private Image holeImage = new Image(ConnectFourApplication.class.getClassLoader().getResourceAsStream("hole.png"));
-	private MediaPlayer clinkSound = new MediaPlayer(new Media(ConnectFourApplication.class.getClassLoader().getResource("clink.wav").toExternalForm()));
-	private MediaPlayer cheerSound = new MediaPlayer(new Media(ConnectFourApplication.class.getClassLoader().getResource("cheer.wav").toExternalForm()));
-	private MediaPlayer lossSound = new MediaPlayer(new Media(ConnectFourApplication.class.getClassLoader().getResource("loss.wav").toExternalForm()));
+	private Image backgroundImage;	// Behind the board
+	private Image holeImage;	// A hole in the board
+	private SoundManager sounds;	// The sound effects
 	
 	
 	@Override
 	public void init() {
 		
-		// Instantiate the first game.
+		// Start decoding the images in the background while the rest of the
+		// program starts up
+		assets = new AssetCache();
+		assets.preload(AssetCache.IMAGES);
+		
+		// Open the opening book and the tablebase and instantiate the first
+		// game.
+		book = OpeningBook.openDefault();
+		tablebase = Tablebase.openDefault();
 		game = new ConnectFour();
+		game.setOpeningBook(book);
+		game.setTablebase(tablebase);
 		
-		// Set up sounds
-		clinkSound.setOnEndOfMedia(() -> {
-			clinkSound.stop();
-		});
-		cheerSound.setOnEndOfMedia(() -> {
-			cheerSound.stop();
-		});
-		lossSound.setOnEndOfMedia(() -> {
-			lossSound.stop();
-		});
+		// Start loading the sounds in the background
+		sounds = new SoundManager();
+		sounds.load();
 		
 		// No animation is playing yet
 		playing = false;
@@ -101,20 +108,26 @@ public class ConnectFourApplication extends Application {
 
 	@Override
 	public void start(Stage primaryStage) throws Exception {
+		// Get the images shared by the rest of the program
+		p1Image = assets.get("p1_token.png");
+		p2Image = assets.get("p2_token.png");
+		backgroundImage = assets.get("background.jpg");
+		holeImage = assets.get("hole.png");
+		
 		// Create GridPane
 		boardGridPane = new GridPane();
 		
 		// Create the corners of the board
-		Image topLeftCornerImage = new Image(getClass().getClassLoader().getResourceAsStream("top_left_corner.png"));
+		Image topLeftCornerImage = assets.get("top_left_corner.png");
 		ImageView topLeftCorner = new ImageView(topLeftCornerImage);
 		boardGridPane.add(topLeftCorner, 0, 0);
-		Image topRightCornerImage = new Image(getClass().getClassLoader().getResourceAsStream("top_right_corner.png"));
+		Image topRightCornerImage = assets.get("top_right_corner.png");
 		ImageView topRightCorner = new ImageView(topRightCornerImage);
 		boardGridPane.add(topRightCorner, ConnectFour.COLUMNS * 2 + 2, 0);
-		Image bottomLeftCornerImage = new Image(getClass().getClassLoader().getResourceAsStream("bottom_left_corner.png"));
+		Image bottomLeftCornerImage = assets.get("bottom_left_corner.png");
 		ImageView bottomLeftCorner = new ImageView(bottomLeftCornerImage);
 		boardGridPane.add(bottomLeftCorner, 0, ConnectFour.ROWS * 2 + 2);
-		Image bottomRightCornerImage = new Image(getClass().getClassLoader().getResourceAsStream("bottom_right_corner.png"));
+		Image bottomRightCornerImage = assets.get("bottom_right_corner.png");
 		ImageView bottomRightCorner = new ImageView(bottomRightCornerImage);
 		boardGridPane.add(bottomRightCorner, ConnectFour.COLUMNS * 2 + 2, ConnectFour.ROWS * 2 + 2);
 		
@@ -177,25 +190,25 @@ public class ConnectFourApplication extends Application {
 			fitHeight += holeImage.getHeight();
 		for (int i = 1; i <= ConnectFour.ROWS * 2 + 1; i += 2)
 			fitHeight += DEF_LEN;
-		Image topEdgeImage = new Image(getClass().getClassLoader().getResourceAsStream("top_edge.png"));
+		Image topEdgeImage = assets.get("top_edge.png");
 		ImageView topEdge = new ImageView(topEdgeImage);
 		Pane topEdgePane = new Pane(topEdge);
 		boardGridPane.add(topEdgePane, 1, 0);
 		GridPane.setColumnSpan(topEdgePane, ConnectFour.COLUMNS * 2 + 1);
 		topEdge.setFitWidth(fitWidth);
-		Image leftEdgeImage = new Image(getClass().getClassLoader().getResourceAsStream("left_edge.png"));
+		Image leftEdgeImage = assets.get("left_edge.png");
 		ImageView leftEdge = new ImageView(leftEdgeImage);
 		Pane leftEdgePane = new Pane(leftEdge);
 		boardGridPane.add(leftEdgePane, 0, 1);
 		GridPane.setRowSpan(leftEdgePane, ConnectFour.ROWS * 2 + 1);
 		leftEdge.setFitHeight(fitHeight);
-		Image bottomEdgeImage = new Image(getClass().getClassLoader().getResourceAsStream("bottom_edge.png"));
+		Image bottomEdgeImage = assets.get("bottom_edge.png");
 		ImageView bottomEdge = new ImageView(bottomEdgeImage);
 		Pane bottomEdgePane = new Pane(bottomEdge);
 		boardGridPane.add(bottomEdgePane, 1, ConnectFour.ROWS * 2 + 2);
 		GridPane.setColumnSpan(bottomEdgePane, ConnectFour.COLUMNS * 2 + 1);
 		bottomEdge.setFitWidth(fitWidth);
-		Image rightEdgeImage = new Image(getClass().getClassLoader().getResourceAsStream("right_edge.png"));
+		Image rightEdgeImage = assets.get("right_edge.png");
 		ImageView rightEdge = new ImageView(rightEdgeImage);
 		Pane rightEdgePane = new Pane(rightEdge);
 		boardGridPane.add(rightEdgePane, ConnectFour.COLUMNS * 2 + 2, 1);
@@ -247,9 +260,9 @@ public class ConnectFourApplication extends Application {
 		stackPane = new StackPane(back, boardGridPane, front);
 		
 		// Create the stands
-		Image leftStand = new Image(getClass().getClassLoader().getResourceAsStream("left_stand.png"));
+		Image leftStand = assets.get("left_stand.png");
 		ImageView standLeft = new ImageView(leftStand);
-		Image rightStand = new Image(getClass().getClassLoader().getResourceAsStream("right_stand.png"));
+		Image rightStand = assets.get("right_stand.png");
 		ImageView standRight = new ImageView(rightStand);
 		rackVBox = new GridPane();
 		rackVBox.add(stackPane, 0, 0);
@@ -260,15 +273,15 @@ public class ConnectFourApplication extends Application {
 		GridPane.setHalignment(standRight, HPos.RIGHT);
 		
 		// Put a background and the StackPane in a Pane
-		ImageView background = new ImageView(BACKGROUND_IMAGE);
+		ImageView background = new ImageView(backgroundImage);
 		canvas = new Pane(background, rackVBox);
-		canvas.setMinSize(BACKGROUND_IMAGE.getWidth(), BACKGROUND_IMAGE.getHeight());
-		canvas.setPrefSize(BACKGROUND_IMAGE.getWidth(), BACKGROUND_IMAGE.getHeight());
-		canvas.setMaxSize(BACKGROUND_IMAGE.getWidth(), BACKGROUND_IMAGE.getHeight());
+		canvas.setMinSize(backgroundImage.getWidth(), backgroundImage.getHeight());
+		canvas.setPrefSize(backgroundImage.getWidth(), backgroundImage.getHeight());
+		canvas.setMaxSize(backgroundImage.getWidth(), backgroundImage.getHeight());
 		
 		// Position the rack on the background
 		primaryStage.setOnShown(event ->{
-			rackVBox.setLayoutX(BACKGROUND_IMAGE.getWidth() / 2 - rackVBox.getWidth() / 2);
+			rackVBox.setLayoutX(backgroundImage.getWidth() / 2 - rackVBox.getWidth() / 2);
 		});
 		rackVBox.setLayoutY(80.0);
 		
@@ -285,7 +298,7 @@ public class ConnectFourApplication extends Application {
 		Label curPlayerLabel = new Label("CURRENT PLAYER");
 		curPlayerLabel.setFont(new Font("Century Gothic Bold", 19));
 		curPlayerBox.getChildren().add(curPlayerLabel);
-		curPlayerImageView = new ImageView(game.curPlayer() == Token.P1 ? P1_IMAGE: P2_IMAGE);
+		curPlayerImageView = new ImageView(game.getSnapshot().curPlayer() == Token.P1 ? p1Image: p2Image);
 		curPlayerBox.getChildren().add(curPlayerImageView);
 		
 		// Put the Pane in the root.
@@ -295,7 +308,7 @@ public class ConnectFourApplication extends Application {
 		root.setBackground(new Background(new BackgroundFill(Color.DARKGREEN, null, null)));
 		
 		// Set the scene
-		scene = new Scene(root, BACKGROUND_IMAGE.getWidth(), BACKGROUND_IMAGE.getHeight());
+		scene = new Scene(root, backgroundImage.getWidth(), backgroundImage.getHeight());
 		this.primaryStage = primaryStage;
 		primaryStage.setScene(scene);
 		primaryStage.setTitle("Connect 4");
@@ -319,7 +332,7 @@ public class ConnectFourApplication extends Application {
 		public void handle(MouseEvent event) {
 			
 			// If it is the computer player's turn, do nothing
-			if (singlePlayer && game.curPlayer() != playerToken) return;
+			if (singlePlayer && game.getSnapshot().curPlayer() != playerToken) return;
 			
 			// Get the column of the clicked tile.
 			int column = GridPane.getColumnIndex((Node)event.getSource());
@@ -388,17 +401,19 @@ public class ConnectFourApplication extends Application {
 	public void dropToken(int column) {
 		
 		// If the game is already over or not a valid column, do nothing
-		if (game.isOver() || !game.validColumn(column) || playing) return;
+		GameSnapshot snapshot = game.getSnapshot();
+		if (snapshot.isOver() || !snapshot.validColumn(column) || playing) return;
 		
 		// Get the information of the token being dropped.
-		Token curToken = game.curPlayer();
-		int row = game.lowestAvailableSpace(column);
+		Token curToken = snapshot.curPlayer();
+		int row = snapshot.lowestAvailableSpace(column);
 		
 		// Drop the token
 		game.drop(column);
+		GameSnapshot after = game.getSnapshot();
 		
 		// Create the animation
-		ImageView imageView = new ImageView(curToken == Token.P1 ? P1_IMAGE : P2_IMAGE);
+		ImageView imageView = new ImageView(curToken == Token.P1 ? p1Image : p2Image);
 		double x = rackVBox.getLayoutX() + backImages[row][column].getLayoutX();
 		double startY = 0.0;
 		double endY = rackVBox.getLayoutY() + backImages[row][column].getLayoutY() - holeImage.getWidth() / 2; // still don't know why i have to subtract half hole height
@@ -412,30 +427,23 @@ public class ConnectFourApplication extends Application {
 		ttrans.setOnFinished(e -> {
 			
 			// Play sound
-			if (!game.isOver())
-				clinkSound.play();
+			if (!after.isOver())
+				sounds.play(SoundManager.Sound.CLINK);
 			else
-				cheerSound.play();
+				sounds.play(SoundManager.Sound.CHEER);
 			
 			// Remove the animated image and place permanent image.
-			backImages[row][column].setImage(curToken == Token.P1 ? P1_IMAGE : P2_IMAGE);
+			backImages[row][column].setImage(curToken == Token.P1 ? p1Image : p2Image);
 			canvas.getChildren().remove(imageView);
 			playing = false;
 			
 			// Display the next player in the current player box if the game is not over
-			if (!game.isOver()) {
-				curPlayerImageView.setImage(curToken == Token.P1 ? P2_IMAGE : P1_IMAGE);
+			if (!after.isOver()) {
+				curPlayerImageView.setImage(curToken == Token.P1 ? p2Image : p1Image);
 				
 				// If it is now the computer player's turn, move for the computer.
 				if (singlePlayer) {
-					new Thread(new Task<Void>() {
-						@Override
-						public Void call() throws InterruptedException {
-							Thread.sleep(WAIT_TIME);
-							computerDropToken();
-							return null;
-						}
-					}).start();
+					computerMove();
 				}
 			}
 			
@@ -454,63 +462,130 @@ public class ConnectFourApplication extends Application {
 	}
 	
 	
-	public void computerDropToken() {
-		
-		// Get the token being dropped.
-		Token curToken = game.curPlayer();
+	/**
+	 * Has the computer find its move in the background and drops its token
+	 * once the move is found and WAIT_TIME has passed, so that the wait and
+	 * the search happen at the same time. The move is dropped on the FX
+	 * thread, and only if the game has not been replaced in the meantime.
+	 * If the search fails, the player is told and the computer drops its
+	 * token in a random column so that the game goes on.
+	 */
+	public void computerMove() {
+		ConnectFour moveGame = game;
+		computerMove = game.computeMoveAsync(moveBudget());
+		CompletableFuture<Void> wait = CompletableFuture.runAsync(() -> {},
+				CompletableFuture.delayedExecutor(WAIT_TIME, TimeUnit.MILLISECONDS));
+		computerMove.thenCombine(wait, (result, v) -> result).whenComplete((result, exception) -> {
+			Platform.runLater(() -> {
+				if (game != moveGame)
+					return;
+				if (exception == null)
+					computerDropToken(result.getColumn());
+				else
+					computerMoveFailed(exception);
+			});
+		});
+	}
+	
+	
+	/**
+	 * Tells the player that the computer could not find a move and drops the
+	 * computer's token in a random valid column instead, so that it is the
+	 * player's turn again.
+	 * @param exception Why the move could not be found.
+	 */
+	private void computerMoveFailed(Throwable exception) {
+		if (exception instanceof CompletionException && exception.getCause() != null)
+			exception = exception.getCause();
+		Alert alert = new Alert(AlertType.ERROR, "The computer could not find a move (" +
+				exception + "), so it will drop its token in a random column.");
+		alert.setTitle("Connect 4");
+		alert.setHeaderText(null);
+		alert.showAndWait();
+		
+		// Pick any column that is not full
+		GameSnapshot snapshot = game.getSnapshot();
+		Random rand = new Random();
+		int column;
+		do {
+			column = rand.nextInt(ConnectFour.COLUMNS);
+		} while (!snapshot.validColumn(column));
+		computerDropToken(column);
+	}
+	
+	
+	/**
+	 * Returns the time the computer may take for a move. Only perfect moves
+	 * have a budget, since the solver could otherwise take minutes on an
+	 * early position. The other difficulties search a fixed depth.
+	 * @return The budget or null for none.
+	 */
+	private java.time.Duration moveBudget() {
+		return selectedDifficulty == 3 ? PERFECT_BUDGET : null;
+	}
+	
+	
+	/**
+	 * Drops the computer's token in the given column and displays it.
+	 * @param column The column to drop the token into.
+	 */
+	public void computerDropToken(int column) {
 		
-		// Drop the computer's token and get the droped column
-		int column = game.computerTurn();
+		// Get the information of the token being dropped.
+		GameSnapshot snapshot = game.getSnapshot();
+		Token curToken = snapshot.curPlayer();
+		int row = snapshot.lowestAvailableSpace(column);
 		
-		// Calculate the row of the dropped Token
-		int row = game.lowestAvailableSpace(column) + 1;
+		// Drop the computer's token and ponder while the player thinks
+		game.drop(column);
+		GameSnapshot after = game.getSnapshot();
+		if (!after.isOver())
+			pondering = game.ponderAsync(moveBudget());
 		
 		// Create the animation
-		Platform.runLater(() -> {
-			ImageView imageView = new ImageView(curToken == Token.P1 ? P1_IMAGE : P2_IMAGE);
-			double x = rackVBox.getLayoutX() + backImages[row][column].getLayoutX();
-			double startY = 0.0;
-			double endY = rackVBox.getLayoutY() + backImages[row][column].getLayoutY() - holeImage.getWidth() / 2; // still don't know why i have to subtract half hole height
-			TranslateTransition ttrans = new TranslateTransition(Duration.millis(1.5 * endY), imageView);
-			ttrans.setFromX(x);
-			ttrans.setFromY(startY);
-			ttrans.setToX(x);
-			ttrans.setToY(endY);
+		ImageView imageView = new ImageView(curToken == Token.P1 ? p1Image : p2Image);
+		double x = rackVBox.getLayoutX() + backImages[row][column].getLayoutX();
+		double startY = 0.0;
+		double endY = rackVBox.getLayoutY() + backImages[row][column].getLayoutY() - holeImage.getWidth() / 2; // still don't know why i have to subtract half hole height
+		TranslateTransition ttrans = new TranslateTransition(Duration.millis(1.5 * endY), imageView);
+		ttrans.setFromX(x);
+		ttrans.setFromY(startY);
+		ttrans.setToX(x);
+		ttrans.setToY(endY);
+		
+		// Display the updated rack grid after the animation
+		ttrans.setOnFinished(e -> {
 			
-			// Display the updated rack grid after the animation
-			ttrans.setOnFinished(e -> {
-				
-				// Play sound
-				if (!game.isOver())
-					clinkSound.play();
-				else if (game.getWinner() != playerToken)
-					lossSound.play();
-				else
-					cheerSound.play();
-				
-				// Remove the animated image and place permanent image.
-				backImages[row][column].setImage(curToken == Token.P1 ? P1_IMAGE : P2_IMAGE);
-				canvas.getChildren().remove(imageView);
-				playing = false;
-				
-				// Display the next player in the current player box if the game is not over
-				if (!game.isOver()) {
-					curPlayerImageView.setImage(curToken == Token.P1 ? P2_IMAGE : P1_IMAGE);
-				}
-				
-				// If the game is over, show a play again dialog
-				else {
-					Platform.runLater(() -> {
-						newGameDialog();
-					});
-				}
-			});
+			// Play sound
+			if (!after.isOver())
+				sounds.play(SoundManager.Sound.CLINK);
+			else if (after.getWinner() != playerToken)
+				sounds.play(SoundManager.Sound.LOSS);
+			else
+				sounds.play(SoundManager.Sound.CHEER);
+			
+			// Remove the animated image and place permanent image.
+			backImages[row][column].setImage(curToken == Token.P1 ? p1Image : p2Image);
+			canvas.getChildren().remove(imageView);
+			playing = false;
 			
-			// Start the animation
-			canvas.getChildren().add(1, imageView);
-			ttrans.play();
-			playing = true;
+			// Display the next player in the current player box if the game is not over
+			if (!after.isOver()) {
+				curPlayerImageView.setImage(curToken == Token.P1 ? p2Image : p1Image);
+			}
+			
+			// If the game is over, show a play again dialog
+			else {
+				Platform.runLater(() -> {
+					newGameDialog();
+				});
+			}
 		});
+		
+		// Start the animation
+		canvas.getChildren().add(1, imageView);
+		ttrans.play();
+		playing = true;
 	}
 	
 	
@@ -527,41 +602,41 @@ public class ConnectFourApplication extends Application {
 		if (!primaryStage.isShowing()) {
 			/*title = "Connect 4";
 			message = "Welcome to Connect 4!";
-			graphic = new ImageView(new Image(getClass().getClassLoader().getResourceAsStream("token.png")));
+			graphic = new ImageView(assets.get("token.png"));
 			prompt = "What type of game would you like to play?";*/
 			singlePlayer = false;
 			primaryStage.show();
 			newGame();
 			return;
 		}
-		else if (singlePlayer && game.getWinner() == playerToken) {
+		else if (singlePlayer && game.getSnapshot().getWinner() == playerToken) {
 			title = "Game Over";
 			message = "You won!";
-			graphic = new ImageView(new Image(getClass().getClassLoader().getResourceAsStream("winner.png")));
+			graphic = new ImageView(assets.get("winner.png"));
 			prompt = "Would you like to play again?";
 		}
-		else if (singlePlayer && game.getWinner() == (playerToken == Token.P1 ? Token.P2: Token.P1)) {
+		else if (singlePlayer && game.getSnapshot().getWinner() == (playerToken == Token.P1 ? Token.P2: Token.P1)) {
 			title = "Game Over";
 			message = "You lost... Better luck next time.";
-			graphic = new ImageView(new Image(getClass().getClassLoader().getResourceAsStream("loser.png")));
+			graphic = new ImageView(assets.get("loser.png"));
 			prompt = "Would you like to play again?";
 		}
-		else if (game.getWinner() == Token.P1) {
+		else if (game.getSnapshot().getWinner() == Token.P1) {
 			title = "Game Over";
 			message = P1_COLOR + " won!";
-			graphic = new ImageView(new Image(getClass().getClassLoader().getResourceAsStream("winner.png")));
+			graphic = new ImageView(assets.get("winner.png"));
 			prompt = "Would you like to play again?";
 		}
-		else if (game.getWinner() == Token.P2) {
+		else if (game.getSnapshot().getWinner() == Token.P2) {
 			title = "Game Over";
 			message = P2_COLOR + " won!";
-			graphic = new ImageView(new Image(getClass().getClassLoader().getResourceAsStream("winner.png")));
+			graphic = new ImageView(assets.get("winner.png"));
 			prompt = "Would you like to play again?";
 		}
 		else {
 			title = "Game Over";
 			message = "It was a draw!";
-			graphic = new ImageView(new Image(getClass().getClassLoader().getResourceAsStream("tie.png")));
+			graphic = new ImageView(assets.get("tie.png"));
 			prompt = "Would you like to play again?";
 		}
 		
@@ -614,6 +689,8 @@ public class ConnectFourApplication extends Application {
 		mediumRadioButton.setToggleGroup(difficultyToggleGroup);
 		RadioButton hardRadioButton = new RadioButton("Hard");
 		hardRadioButton.setToggleGroup(difficultyToggleGroup);
+		RadioButton perfectRadioButton = new RadioButton("Perfect");
+		perfectRadioButton.setToggleGroup(difficultyToggleGroup);
 		difficultyToggleGroup.selectToggle(difficultyToggleGroup.getToggles().get(selectedDifficulty));
 		
 		Label playerColorLabel = new Label("Your Color");
@@ -641,6 +718,7 @@ public class ConnectFourApplication extends Application {
 		radioBox.add(easyRadioButton, 0, 1);
 		radioBox.add(mediumRadioButton, 1, 1);
 		radioBox.add(hardRadioButton, 2, 1);
+		radioBox.add(perfectRadioButton, 3, 1);
 		radioBox.add(playerColorLabel, 0, 3);
 		radioBox.add(redRadioButton, 0, 4);
 		radioBox.add(yellowRadioButton, 1, 4);
@@ -655,7 +733,7 @@ public class ConnectFourApplication extends Application {
 		// Create the dialog
 		Alert dialog = new Alert(AlertType.CONFIRMATION, null, playButtonType, backButtonType);
 		dialog.setTitle("Single-Player Game");
-		dialog.setGraphic(new ImageView(new Image(getClass().getClassLoader().getResourceAsStream("computer.png"))));
+		dialog.setGraphic(new ImageView(assets.get("computer.png")));
 		dialog.setHeaderText("Set the settings to your liking and press Play when ready.");
 		dialog.getDialogPane().setContent(radioBox);
 		dialog.getDialogPane().setPrefSize(DIALOG_WIDTH, DIALOG_HEIGHT);
@@ -704,19 +782,26 @@ public class ConnectFourApplication extends Application {
 					game.setDifficulty(Difficulty.MEDIUM);
 					selectedDifficulty = 1;
 				}
-				else {
+				else if (hardRadioButton.isSelected()) {
 					game.setDifficulty(Difficulty.HARD);
 					selectedDifficulty = 2;
 				}
+				else {
+					game.setDifficulty(Difficulty.PERFECT);
+					selectedDifficulty = 3;
+				}
 				
 				// If it is the first game, show the stage which is not visible
 				if (!primaryStage.isShowing()) {
 					primaryStage.show();
 				}
 				
-				// If it is the computer's move, move for the computer
-				if (game.curPlayer() != playerToken)
-					computerDropToken();
+				// If it is the computer's move, move for the computer.
+				// Otherwise, ponder while the player thinks.
+				if (game.getSnapshot().curPlayer() != playerToken)
+					computerMove();
+				else
+					pondering = game.ponderAsync(moveBudget());
 			}
 			else {
 				newGameDialog();
@@ -730,8 +815,14 @@ public class ConnectFourApplication extends Application {
 	 */
 	public void newGame() {
 		
-		// Instantiate the new game.
+		// Stop computing a move for the old game and instantiate the new game.
+		if (computerMove != null)
+			computerMove.cancel(true);
+		if (pondering != null)
+			pondering.cancel(true);
 		game = new ConnectFour();
+		game.setOpeningBook(book);
+		game.setTablebase(tablebase);
 		
 		// Remove token images from backImages
 		for (int i = 0; i < ConnectFour.ROWS; i++) {
@@ -741,7 +832,7 @@ public class ConnectFourApplication extends Application {
 		}
 		
 		// Set the correct "current player" pane
-		curPlayerImageView.setImage(game.curPlayer() == Token.P1 ? P1_IMAGE: P2_IMAGE);
+		curPlayerImageView.setImage(game.getSnapshot().curPlayer() == Token.P1 ? p1Image: p2Image);
 	}
 	
 	
@@ -750,8 +841,14 @@ public class ConnectFourApplication extends Application {
 	 */
 	public void newGame(Token firstPlayer) {
 		
-		// Instantiate the new game.
+		// Stop computing a move for the old game and instantiate the new game.
+		if (computerMove != null)
+			computerMove.cancel(true);
+		if (pondering != null)
+			pondering.cancel(true);
 		game = new ConnectFour(firstPlayer);
+		game.setOpeningBook(book);
+		game.setTablebase(tablebase);
 		
 		// Remove token images from backImages
 		for (int i = 0; i < ConnectFour.ROWS; i++) {
@@ -761,7 +858,7 @@ public class ConnectFourApplication extends Application {
 		}
 		
 		// Set the correct "current player" pane
-		curPlayerImageView.setImage(game.curPlayer() == Token.P1 ? P1_IMAGE: P2_IMAGE);
+		curPlayerImageView.setImage(game.getSnapshot().curPlayer() == Token.P1 ? p1Image: p2Image);
 	}
 
 }
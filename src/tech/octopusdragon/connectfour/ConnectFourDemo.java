@@ -15,16 +15,58 @@ public class ConnectFourDemo {
 	private final static char EMPTY = ' ';		// Character for empty space
 	private final static boolean SINGLE_PLAYER = true;	// Whether single player
 	private final static Difficulty DIFFICULTY = Difficulty.HARD;	// Difficulty
+	private final static int BENCH_DEPTH = 12;	// Default depth of the bench
+	
+	// Positions to time the solver on, as the columns played (starting at 1)
+	// followed by the exact score for the player on move. From the end of the
+	// game to the beginning.
+	private final static String[] SOLVER_POSITIONS = {
+			"2252576253462244111563365343671351441 -1",
+			"3732121265316625465356117377 -1",
+			"7656712367167763257423354214 0",
+			"3245775156732617335446723566 0",
+			"7526177754324451211273466631 0",
+			"271571311464542647 -4",
+			"475265226276646273 -5",
+			"547721437455211513 -1",
+			"421647545642311551 0",
+			"664721535646 -1",
+			"165421563533 2",
+			"263454611331 1",
+			"665472233577 -12"
+	};
 	
 	private static ConnectFour game;	// The game
+	private static OpeningBook book;	// The opening book, if there is one
+	private static Tablebase tablebase;	// The endgame tablebase, if there is one
 	private static Scanner keyboard;	// Scanner for keyboard input
 	
 	
 	public static void main(String[] args) {
 		
+		// Time the solver, the parallel search or the search itself instead of
+		// playing if asked to
+		if (args.length > 0 && args[0].equals("bench")) {
+			bench(args.length > 1 ? Integer.parseInt(args[1]): BENCH_DEPTH);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("solve")) {
+			solverBenchmark();
+			return;
+		}
+		if (args.length > 0 && args[0].equals("speedup")) {
+			speedupBenchmark(args.length > 1 ? Integer.parseInt(args[1]):
+					Runtime.getRuntime().availableProcessors());
+			return;
+		}
+		
 		// Create Scanner for keyboard input
 		keyboard = new Scanner(System.in);
 		
+		// Open the opening book and the tablebase
+		book = OpeningBook.openDefault();
+		tablebase = Tablebase.openDefault();
+		
 		// Keep playing until the user wants to stop
 		boolean keepGoing = true;
 		do {
@@ -72,6 +114,9 @@ public class ConnectFourDemo {
 		// Instantiate the game
 		game = new ConnectFour();
 		game.setDifficulty(DIFFICULTY);
+		game.setOpeningBook(book);
+		game.setTablebase(tablebase);
+		game.setSearchListener(ConnectFourDemo::displaySearchStats);
 		
 		// Play the game
 		displayGrid();
@@ -133,42 +178,171 @@ public class ConnectFourDemo {
 	
 	
 	
+	/**
+	 * Has the computer search each of the solver positions from scratch to
+	 * the given depth on one thread and prints the positions searched and time
+	 * taken for each, followed by the totals and a signature of the node
+	 * counts. The node counts only depend on how the search works, so the
+	 * signature changes exactly when the search does, while a slowdown shows
+	 * up as fewer positions per second.
+	 * @param depth The depth to search to.
+	 */
+	private static void bench(int depth) {
+		long totalNodes = 0;
+		long totalTime = 0;
+		long signature = 0;
+		System.out.printf("%-40s %6s %12s %10s %10s%n",
+				"Position", "Column", "Nodes", "Time (ms)", "Knodes/s");
+		for (String line : SOLVER_POSITIONS) {
+			String moves = line.split(" ")[0];
+			ConnectFour position = new ConnectFour(Token.P1);
+			for (char column : moves.toCharArray())
+				position.drop(column - '1');
+			position.setDifficulty(Difficulty.HARD);
+			position.setMaxDepth(depth);
+			position.setSeed(0);
+			
+			// Search the position
+			long start = System.nanoTime();
+			int column = position.computerTurn();
+			long time = System.nanoTime() - start;
+			long nodes = position.getNodeCount();
+			totalNodes += nodes;
+			totalTime += time;
+			signature = signature * 31 + nodes;
+			
+			// Print the results
+			System.out.printf("%-40s %6d %12d %10.2f %10.0f%n",
+					moves, column + 1, nodes, time / 1e6, nodes / (time / 1e6));
+		}
+		System.out.printf("%-40s %6s %12d %10.2f %10.0f%n",
+				"Total", "", totalNodes, totalTime / 1e6, totalNodes / (totalTime / 1e6));
+		System.out.printf("Nodes/second: %d%n", (long)(totalNodes / (totalTime / 1e9)));
+		System.out.printf("Signature: %016x%n", signature);
+	}
+	
+	
+	
+	/**
+	 * Solves each of the solver positions from scratch and prints the score,
+	 * positions searched and time taken for each, followed by the totals.
+	 */
+	private static void solverBenchmark() {
+		Solver solver = new Solver();
+		long totalNodes = 0;
+		long totalTime = 0;
+		System.out.printf("%-40s %6s %12s %10s %10s%n",
+				"Position", "Score", "Nodes", "Time (ms)", "Knodes/s");
+		for (String line : SOLVER_POSITIONS) {
+			String[] parts = line.split(" ");
+			ConnectFour position = new ConnectFour(Token.P1);
+			for (char column : parts[0].toCharArray())
+				position.drop(column - '1');
+			
+			// Solve the position
+			solver.reset();
+			long start = System.nanoTime();
+			int score = solver.solve(position);
+			long time = System.nanoTime() - start;
+			long nodes = solver.getNodeCount();
+			totalNodes += nodes;
+			totalTime += time;
+			
+			// Print the results
+			System.out.printf("%-40s %6d %12d %10.2f %10.0f%s%n",
+					parts[0], score, nodes, time / 1e6, nodes / (time / 1e6),
+					score == Integer.parseInt(parts[1]) ? "": " WRONG");
+		}
+		System.out.printf("%-40s %6s %12d %10.2f %10.0f%n",
+				"Total", "", totalNodes, totalTime / 1e6, totalNodes / (totalTime / 1e6));
+	}
+	
+	
+	
+	/**
+	 * Has the computer move from each of the solver positions with 1 up to the
+	 * given number of threads and prints the total time and speedup for each
+	 * number of threads.
+	 * @param maxThreads The most threads to search with.
+	 */
+	private static void speedupBenchmark(int maxThreads) {
+		double singleThreadTime = 0.0;
+		System.out.printf("%8s %10s %8s%n", "Threads", "Time (ms)", "Speedup");
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			long time = 0;
+			for (String line : SOLVER_POSITIONS) {
+				ConnectFour position = new ConnectFour(Token.P1);
+				for (char column : line.split(" ")[0].toCharArray())
+					position.drop(column - '1');
+				position.setDifficulty(Difficulty.HARD);
+				position.setThreads(threads);
+				long start = System.nanoTime();
+				position.computerTurn();
+				time += System.nanoTime() - start;
+			}
+			if (threads == 1)
+				singleThreadTime = time;
+			System.out.printf("%8d %10.2f %8.2f%n", threads, time / 1e6, singleThreadTime / time);
+		}
+	}
+	
+	
+	
+	/**
+	 * Displays the evaluation of each column found by a computer search,
+	 * followed by how much it searched.
+	 * @param stats The statistics of the search.
+	 */
+	private static void displaySearchStats(SearchStats stats) {
+		int[] scores = stats.getColumnScores();
+		for (int i = 0; i < scores.length; i++)
+			if (game.validColumn(i))
+				System.out.printf("%12d", scores[i]);
+		System.out.println();
+		System.out.printf("Depth %d, %d nodes, %.0f nodes/s, %.0f%% first move " +
+						  "cutoffs, %.0f%% table hits%n",
+				stats.getDepth(), stats.getNodes(), stats.getNodesPerSecond(),
+				stats.getFirstMoveCutoffRate() * 100, stats.getTableHitRate() * 100);
+	}
+	
+	
+	
 	/**
 	 * Displays the game's rack board.
 	 */
 	private static void displayGrid() {
 		Token[][] grid = game.getGrid();	// Easy access to grid
 		
-		for (int i = 0; i < ConnectFour.ROWS; i++) {
+		for (int i = 0; i < game.getGeometry().getRows(); i++) {
 			// Print horizontal line
-			for (int j = 0; j < ConnectFour.COLUMNS; j++) {
+			for (int j = 0; j < game.getGeometry().getColumns(); j++) {
 				System.out.print("+---");
 			}
 			System.out.println("+");
 			
 			// Print holes
-			for (int j = 0; j < ConnectFour.COLUMNS; j++) {
+			for (int j = 0; j < game.getGeometry().getColumns(); j++) {
 				System.out.print("| " + getToken(grid[i][j]) + " ");
 			}
 			System.out.println("|");
 		}
 		
 		// Print last horizontal line
-		for (int j = 0; j < ConnectFour.COLUMNS; j++) {
+		for (int j = 0; j < game.getGeometry().getColumns(); j++) {
 			System.out.print("+---");
 		}
 		System.out.println("+");
 		
 		// Print legs
 		System.out.print("|   ");
-		for (int i = 0; i < ConnectFour.COLUMNS - 1; i++) {
+		for (int i = 0; i < game.getGeometry().getColumns() - 1; i++) {
 			System.out.print("    ");
 		}
 		System.out.println("|");
 		
 		// Print feet
 		System.out.print("⊥   ");
-		for (int i = 0; i < ConnectFour.COLUMNS - 1; i++) {
+		for (int i = 0; i < game.getGeometry().getColumns() - 1; i++) {
 			System.out.print("    ");
 		}
 		System.out.println("⊥");
@@ -189,5 +363,5 @@ public class ConnectFourDemo {
 		else
 			return EMPTY;
 	}
-
+	
 }
@@ -6,5 +6,5 @@ package tech.octopusdragon.connectfour;
  *
  */
 public enum Difficulty {
-	EASY, MEDIUM, HARD
+	EASY, MEDIUM, HARD, PERFECT
 }
@@ -0,0 +1,221 @@
+package tech.octopusdragon.connectfour;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Packs games into compact binary records and unpacks them again. A record
+ * is a header followed by the moves. The header is the number of moves times
+ * two, plus one if P2 moved first, written as a varint: seven bits per byte,
+ * lowest first, with the top bit set on every byte but the last. Each move
+ * is then written as its column in three bits, lowest bits first, packed
+ * into as few bytes as they fit in. A finished game on the standard grid
+ * takes at most 17 bytes.
+ * <p>
+ * Records only hold columns, so they can be read back onto any grid with at
+ * most eight columns. Which grid is up to the reader.
+ * @author Alex Gill
+ *
+ */
+public final class GameRecord {
+	
+	public static final int BITS_PER_MOVE = 3;	// Bits taken up by each move
+	public static final int MAX_COLUMNS = 1 << BITS_PER_MOVE;	// Columns that fit
+	public static final int MAX_MOVES = Geometry.MAX_SPACES;	// Moves in a game
+	public static final int MAX_SIZE = 2 + (MAX_MOVES * BITS_PER_MOVE + 7) / 8;	// Bytes
+	
+	private static final int MOVE_MASK = MAX_COLUMNS - 1;
+	
+	
+	private GameRecord() {
+	}
+	
+	
+	
+	/**
+	 * Returns the number of bytes a record of the given number of moves takes.
+	 * @param moveCount The number of moves.
+	 * @return The size of the record in bytes.
+	 */
+	public static int size(int moveCount) {
+		return varintSize(moveCount << 1) + movesSize(moveCount);
+	}
+	
+	
+	
+	/**
+	 * Writes a record of the given game.
+	 * @param game The game.
+	 * @param buffer The buffer to write the record to.
+	 * @throws IllegalArgumentException If the grid has more than MAX_COLUMNS
+	 * columns.
+	 * @throws BufferOverflowException If the record does not fit in the
+	 * buffer.
+	 */
+	public static void encode(ConnectFour game, ByteBuffer buffer) {
+		if (game.getGeometry().getColumns() > MAX_COLUMNS)
+			throw new IllegalArgumentException("Records hold at most " + MAX_COLUMNS + " columns");
+		encode(game.getStartingPlayer(), game.moveArray(), game.getMoveCount(), buffer);
+	}
+	
+	
+	
+	/**
+	 * Writes a record of the given moves. The moves are checked before
+	 * anything is written, so if an exception is thrown, the buffer is left
+	 * as it was and the records already in it stay readable.
+	 * @param startingPlayer The player who moved first.
+	 * @param moves The columns played, in order.
+	 * @param count The number of moves to write from the start of moves.
+	 * @param buffer The buffer to write the record to.
+	 * @throws IllegalArgumentException If there are more than MAX_MOVES moves
+	 * or a column does not fit in BITS_PER_MOVE bits.
+	 * @throws BufferOverflowException If the record does not fit in the
+	 * buffer.
+	 */
+	public static void encode(Token startingPlayer, int[] moves, int count, ByteBuffer buffer) {
+		if (count < 0 || count > MAX_MOVES)
+			throw new IllegalArgumentException("Invalid number of moves: " + count);
+		for (int i = 0; i < count; i++)
+			if (moves[i] < 0 || moves[i] >= MAX_COLUMNS)
+				throw new IllegalArgumentException("Column out of range: " + moves[i]);
+		if (buffer.remaining() < size(count))
+			throw new BufferOverflowException();
+		writeHeader(buffer, count, startingPlayer);
+		long bits = 0;
+		int bitCount = 0;
+		for (int i = 0; i < count; i++) {
+			bits |= (long)moves[i] << bitCount;
+			bitCount += BITS_PER_MOVE;
+			if (bitCount >= Byte.SIZE) {
+				buffer.put((byte)bits);
+				bits >>>= Byte.SIZE;
+				bitCount -= Byte.SIZE;
+			}
+		}
+		if (bitCount > 0)
+			buffer.put((byte)bits);
+	}
+	
+	
+	
+	/**
+	 * Reads a record and plays it on the standard grid.
+	 * @param buffer The buffer to read the record from.
+	 * @return The game.
+	 * @throws IllegalArgumentException If the record is not valid.
+	 * @throws BufferUnderflowException If the buffer ends in the middle of
+	 * the record.
+	 */
+	public static ConnectFour decode(ByteBuffer buffer) {
+		int[] moves = new int[MAX_MOVES];
+		int header = readHeader(buffer);
+		int count = moveCount(header);
+		readMoves(buffer, moves, count);
+		return ConnectFour.fromMoves(Geometry.STANDARD, startingPlayer(header), moves, count);
+	}
+	
+	
+	
+	/**
+	 * Reads the header of a record.
+	 * @param buffer The buffer to read from.
+	 * @return The header.
+	 * @throws IllegalArgumentException If the header is not valid.
+	 * @throws BufferUnderflowException If the buffer ends in the header.
+	 */
+	static int readHeader(ByteBuffer buffer) {
+		int header = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			header |= (b & 0x7F) << shift;
+			if (b >= 0)
+				break;
+			if (shift >= 14)
+				throw new IllegalArgumentException("Header too long");
+		}
+		if (moveCount(header) > MAX_MOVES)
+			throw new IllegalArgumentException("Too many moves: " + moveCount(header));
+		return header;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of moves in the record with the given header.
+	 * @param header The header.
+	 * @return The number of moves.
+	 */
+	static int moveCount(int header) {
+		return header >>> 1;
+	}
+	
+	
+	
+	/**
+	 * Returns the player who moved first in the record with the given header.
+	 * @param header The header.
+	 * @return The starting player.
+	 */
+	static Token startingPlayer(int header) {
+		return (header & 1) != 0 ? Token.P2: Token.P1;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of bytes the given number of packed moves takes.
+	 * @param moveCount The number of moves.
+	 * @return The number of bytes.
+	 */
+	static int movesSize(int moveCount) {
+		return (moveCount * BITS_PER_MOVE + Byte.SIZE - 1) / Byte.SIZE;
+	}
+	
+	
+	
+	/**
+	 * Reads the packed moves of a record.
+	 * @param buffer The buffer to read from, just after the header.
+	 * @param moves The array to read the moves into.
+	 * @param count The number of moves.
+	 * @throws BufferUnderflowException If the buffer ends in the moves.
+	 */
+	static void readMoves(ByteBuffer buffer, int[] moves, int count) {
+		long bits = 0;
+		int bitCount = 0;
+		for (int i = 0; i < count; i++) {
+			if (bitCount < BITS_PER_MOVE) {
+				bits |= (long)(buffer.get() & 0xFF) << bitCount;
+				bitCount += Byte.SIZE;
+			}
+			moves[i] = (int)bits & MOVE_MASK;
+			bits >>>= BITS_PER_MOVE;
+			bitCount -= BITS_PER_MOVE;
+		}
+	}
+	
+	
+	
+	private static void writeHeader(ByteBuffer buffer, int count, Token startingPlayer) {
+		int header = count << 1 | (startingPlayer == Token.P2 ? 1: 0);
+		while ((header & ~0x7F) != 0) {
+			buffer.put((byte)(header & 0x7F | 0x80));
+			header >>>= 7;
+		}
+		buffer.put((byte)header);
+	}
+	
+	
+	
+	private static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+	
+}
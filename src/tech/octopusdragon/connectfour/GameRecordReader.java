@@ -0,0 +1,177 @@
+package tech.octopusdragon.connectfour;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads games written by GameRecordWriter from a channel, one at a time. The
+ * channel is read through a large buffer and each game is read into the same
+ * array of moves, so reading a game creates no objects. A game is only built
+ * when asked for with toGame.
+ * @author Alex Gill
+ *
+ */
+public class GameRecordReader implements Closeable {
+	
+	private ReadableByteChannel channel;	// The channel read from
+	private ByteBuffer buffer;				// Bytes read but not yet used
+	private boolean endOfChannel;			// Whether the channel has ended
+	private int[] moves;					// Moves of the current game
+	private int moveCount;					// Number of moves in the current game
+	private Token startingPlayer;			// Who moved first in the current game
+	private long count;						// Number of games read
+	
+	
+	/**
+	 * This constructor instantiates a reader and reads the magic number.
+	 * @param channel The channel to read from. It is closed with the reader.
+	 * @throws IOException If the channel cannot be read or does not hold
+	 * game records.
+	 */
+	public GameRecordReader(ReadableByteChannel channel) throws IOException {
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(GameRecordWriter.BUFFER_SIZE);
+		buffer.flip();
+		endOfChannel = false;
+		moves = new int[GameRecord.MAX_MOVES];
+		moveCount = 0;
+		startingPlayer = null;
+		count = 0;
+		if (!fill(Integer.BYTES) || buffer.getInt() != GameRecordWriter.MAGIC)
+			throw new IOException("Not a game record stream");
+	}
+	
+	
+	
+	/**
+	 * Reads the next game.
+	 * @return true if a game was read or false if the channel has ended.
+	 * @throws IOException If the channel cannot be read or ends in the middle
+	 * of a record.
+	 * @throws IllegalArgumentException If the record is not valid.
+	 */
+	public boolean next() throws IOException {
+		if (!fill(1))
+			return false;
+		
+		// Read the header, making sure the longest one is there
+		fill(GameRecord.MAX_SIZE);
+		int header;
+		try {
+			header = GameRecord.readHeader(buffer);
+		}
+		catch (BufferUnderflowException e) {
+			throw new EOFException("Record cut off");
+		}
+		
+		// Read the moves
+		moveCount = GameRecord.moveCount(header);
+		if (buffer.remaining() < GameRecord.movesSize(moveCount))
+			throw new EOFException("Record cut off");
+		GameRecord.readMoves(buffer, moves, moveCount);
+		startingPlayer = GameRecord.startingPlayer(header);
+		count++;
+		return true;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of moves in the current game.
+	 * @return The number of moves.
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+	
+	
+	
+	/**
+	 * Returns the column of the given move of the current game.
+	 * @param index The number of the move, counting from 0.
+	 * @return The column played.
+	 */
+	public int getMove(int index) {
+		return moves[index];
+	}
+	
+	
+	
+	/**
+	 * Returns the player who moved first in the current game.
+	 * @return The starting player.
+	 */
+	public Token getStartingPlayer() {
+		return startingPlayer;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of games read so far.
+	 * @return The number of games.
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	
+	
+	/**
+	 * Plays the current game on the standard grid.
+	 * @return The game.
+	 * @throws IllegalArgumentException If the moves are not valid on it.
+	 */
+	public ConnectFour toGame() {
+		return toGame(Geometry.STANDARD);
+	}
+	
+	
+	
+	/**
+	 * Plays the current game on a grid of the given geometry.
+	 * @param geometry The size of the grid and the number in a row to win.
+	 * @return The game.
+	 * @throws IllegalArgumentException If the moves are not valid on it.
+	 */
+	public ConnectFour toGame(Geometry geometry) {
+		return ConnectFour.fromMoves(geometry, startingPlayer, moves, moveCount);
+	}
+	
+	
+	
+	/**
+	 * Closes the channel.
+	 * @throws IOException If the channel cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	
+	
+	/**
+	 * Reads from the channel until the buffer holds at least the given number
+	 * of bytes or the channel ends.
+	 * @param bytes The number of bytes.
+	 * @return Whether the buffer holds that many bytes.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	private boolean fill(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes)
+			return true;
+		buffer.compact();
+		while (buffer.position() < bytes && !endOfChannel) {
+			if (channel.read(buffer) < 0)
+				endOfChannel = true;
+		}
+		buffer.flip();
+		return buffer.remaining() >= bytes;
+	}
+	
+}
@@ -0,0 +1,109 @@
+package tech.octopusdragon.connectfour;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes games one after another to a channel as GameRecord records. The
+ * stream starts with a four byte magic number and is written through a
+ * large buffer, so that writing a game only touches the channel once the
+ * buffer fills up.
+ * @author Alex Gill
+ *
+ */
+public class GameRecordWriter implements Closeable {
+	
+	static final int MAGIC = 0x43344752;		// "C4GR"
+	static final int BUFFER_SIZE = 1 << 16;	// Bytes written at a time
+	
+	private WritableByteChannel channel;	// The channel written to
+	private ByteBuffer buffer;				// Records not yet written
+	private long count;						// Number of games written
+	
+	
+	/**
+	 * This constructor instantiates a writer and writes the magic number.
+	 * @param channel The channel to write to. It is closed with the writer.
+	 */
+	public GameRecordWriter(WritableByteChannel channel) {
+		this.channel = channel;
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.putInt(MAGIC);
+		count = 0;
+	}
+	
+	
+	
+	/**
+	 * Writes a record of the given game.
+	 * @param game The game.
+	 * @throws IOException If the channel cannot be written to.
+	 * @throws IllegalArgumentException If the grid has more than
+	 * GameRecord.MAX_COLUMNS columns.
+	 */
+	public void write(ConnectFour game) throws IOException {
+		if (buffer.remaining() < GameRecord.MAX_SIZE)
+			flush();
+		GameRecord.encode(game, buffer);
+		count++;
+	}
+	
+	
+	
+	/**
+	 * Writes a record of the given moves.
+	 * @param startingPlayer The player who moved first.
+	 * @param moves The columns played, in order.
+	 * @param moveCount The number of moves to write from the start of moves.
+	 * @throws IOException If the channel cannot be written to.
+	 * @throws IllegalArgumentException If the moves do not fit in a record.
+	 */
+	public void write(Token startingPlayer, int[] moves, int moveCount) throws IOException {
+		if (buffer.remaining() < GameRecord.MAX_SIZE)
+			flush();
+		GameRecord.encode(startingPlayer, moves, moveCount, buffer);
+		count++;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of games written so far.
+	 * @return The number of games.
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	
+	
+	/**
+	 * Writes every buffered record to the channel.
+	 * @throws IOException If the channel cannot be written to.
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+	
+	
+	
+	/**
+	 * Writes every buffered record and closes the channel.
+	 * @throws IOException If the channel cannot be written to or closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			channel.close();
+		}
+	}
+	
+}
@@ -0,0 +1,552 @@
+package tech.octopusdragon.connectfour;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hosts any number of games of Connect Four for clients connecting over TCP,
+ * without a user interface. Each connection is served by its own thread from
+ * SearchExecutor, a virtual thread when the JVM has them, so a blocked client
+ * or a long computer move only holds up its own connection.
+ * <p>
+ * Clients send one command per line and get one line back, starting with OK
+ * or with ERR and the reason. Columns are numbered from 1.
+ * <ul>
+ * <li>NEW [difficulty [rows columns line length]] starts a game with P1 on
+ * move and replies with its id.</li>
+ * <li>DROP id column drops a token for the player on move and replies with
+ * the status of the game.</li>
+ * <li>AI id has the computer move for the player on move and replies with
+ * the column and the status of the game.</li>
+ * <li>STATE id replies with the status, the player on move and the columns
+ * played so far.</li>
+ * <li>END id ends the game.</li>
+ * <li>STATS replies with the number of computer moves waiting, the most that
+ * have waited at once, the number made, and the average and longest wait and
+ * search times in milliseconds, and the number of moves searched with a cut
+ * budget or shallowly under load, as name=value pairs.</li>
+ * <li>QUIT closes the connection.</li>
+ * </ul>
+ * The status is PLAYING, DRAW or the winning player.
+ * <p>
+ * Games are kept in a concurrent map by id, so looking one up never waits on
+ * another. Moves in a game are made holding the game's own lock, so any
+ * connection can play in any game, and games started over a connection are
+ * ended when it closes. STATE reads the game's snapshot and does not lock.
+ * <p>
+ * Computer moves are searched by a SearchScheduler, which runs a bounded
+ * number at once, gives each the time budget of its difficulty and lets the
+ * games take turns. The connection waits for its move without holding up
+ * the others. Under load, moves are searched less deeply so that they still
+ * come within the scheduler's latency target.
+ * <p>
+ * Usage: GameServer [port], by default 4004.
+ * @author Alex Gill
+ *
+ */
+public class GameServer implements Closeable {
+	
+	public static final int DEFAULT_PORT = 4004;
+	public static final int DEFAULT_TABLE_SIZE = 1;	// Megabytes per game
+	public static final int MAX_LINE_LENGTH = 256;	// Longest command accepted
+	
+	/**
+	 * A game being played on the server. The lock is a ReentrantLock rather
+	 * than a synchronized block so that virtual threads waiting on it do not
+	 * hold on to their carrier threads.
+	 */
+	private static class Session {
+		final long id;										// The game's id
+		final ConnectFour game;								// The game
+		final Difficulty difficulty;						// The computer's difficulty
+		final ReentrantLock lock = new ReentrantLock();		// Guards moves
+		
+		Session(long id, ConnectFour game, Difficulty difficulty) {
+			this.id = id;
+			this.game = game;
+			this.difficulty = difficulty;
+		}
+	}
+	
+	private final ServerSocket serverSocket;	// Accepts connections
+	private final ConcurrentHashMap<Long, Session> sessions;	// Games by id
+	private final AtomicLong nextId;		// Id of the next game started
+	private final AtomicLong movesPlayed;	// Moves made on the server so far
+	private OpeningBook book;				// Opening book shared by every game
+	private Tablebase tablebase;			// Tablebase shared by every game
+	private int tableSize;					// Table size of each game
+	private final SearchScheduler scheduler;	// Searches the computer moves
+	
+	
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]): DEFAULT_PORT;
+		try (GameServer server = new GameServer(port)) {
+			server.setOpeningBook(OpeningBook.openDefault());
+			server.setTablebase(Tablebase.openDefault());
+			System.out.println("Listening on port " + server.getPort());
+			server.serve();
+		}
+	}
+	
+	
+	
+	/**
+	 * This constructor instantiates a server listening on the given port.
+	 * Connections are not accepted until serve or start is called.
+	 * @param port The port or 0 for any free port.
+	 * @throws IOException If the port cannot be listened on.
+	 */
+	public GameServer(int port) throws IOException {
+		serverSocket = new ServerSocket(port);
+		sessions = new ConcurrentHashMap<>();
+		nextId = new AtomicLong(1);
+		movesPlayed = new AtomicLong();
+		book = null;
+		tablebase = null;
+		tableSize = DEFAULT_TABLE_SIZE;
+		scheduler = new SearchScheduler();
+	}
+	
+	
+	
+	/**
+	 * Sets the opening book every game started afterwards plays from.
+	 * @param book The opening book or null to not use one.
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		this.book = book;
+	}
+	
+	
+	
+	/**
+	 * Sets the endgame tablebase every game started afterwards plays from.
+	 * @param tablebase The tablebase or null to not use one.
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+	
+	
+	
+	/**
+	 * Sets the size of the transposition table of each game started
+	 * afterwards. Tables are only made once the computer moves in a game.
+	 * @param megabytes The size of each table in megabytes.
+	 */
+	public void setTableSize(int megabytes) {
+		this.tableSize = megabytes;
+	}
+	
+	
+	
+	/**
+	 * Returns the scheduler the computer moves are searched by, to set the
+	 * time budgets with or to read its statistics.
+	 * @return The scheduler.
+	 */
+	public SearchScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	
+	
+	/**
+	 * Returns the port the server is listening on.
+	 * @return The port.
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	
+	
+	/**
+	 * Returns the number of games being played.
+	 * @return The number of games.
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+	
+	
+	
+	/**
+	 * Returns the number of moves made on the server so far, by clients and
+	 * by the computer.
+	 * @return The number of moves.
+	 */
+	public long getMovesPlayed() {
+		return movesPlayed.get();
+	}
+	
+	
+	
+	/**
+	 * Accepts connections in the background until the server is closed.
+	 */
+	public void start() {
+		SearchExecutor.get().execute(() -> {
+			try {
+				serve();
+			}
+			catch (IOException e) {
+				// Closed
+			}
+		});
+	}
+	
+	
+	
+	/**
+	 * Accepts connections on this thread until the server is closed.
+	 * @throws IOException If accepting fails for any other reason.
+	 */
+	public void serve() throws IOException {
+		while (!serverSocket.isClosed()) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			}
+			catch (IOException e) {
+				if (serverSocket.isClosed())
+					return;
+				throw e;
+			}
+			SearchExecutor.get().execute(() -> handle(socket));
+		}
+	}
+	
+	
+	
+	/**
+	 * Stops accepting connections and searching computer moves. Connections
+	 * already open are served until their clients close them, but computer
+	 * moves are refused.
+	 */
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		scheduler.close();
+	}
+	
+	
+	
+	/**
+	 * Serves a connection until the client quits or closes it, then ends the
+	 * games started over it.
+	 * @param socket The connection.
+	 */
+	private void handle(Socket socket) {
+		ArrayList<Long> started = new ArrayList<>();
+		try (socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						socket.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(
+						socket.getOutputStream(), StandardCharsets.UTF_8))) {
+			socket.setTcpNoDelay(true);
+			String line;
+			while ((line = readLine(in)) != null) {
+				if (line.trim().equalsIgnoreCase("QUIT")) {
+					out.write("OK\n");
+					break;
+				}
+				String reply;
+				try {
+					reply = "OK" + execute(line, started);
+				}
+				catch (IllegalArgumentException e) {
+					reply = "ERR " + e.getMessage();
+				}
+				out.write(reply);
+				out.write('\n');
+				out.flush();
+			}
+		}
+		catch (IOException e) {
+			// The client went away
+		}
+		finally {
+			for (long id : started)
+				sessions.remove(id);
+		}
+	}
+	
+	
+	
+	/**
+	 * Reads a line without keeping more than MAX_LINE_LENGTH + 1 characters
+	 * of it, so that a client cannot fill up memory with one long line. The
+	 * rest of a longer line is read and thrown away, and what was kept is
+	 * then too long to be a command.
+	 * @param in The reader.
+	 * @return The line without its line break, or null at the end of the
+	 * stream.
+	 * @throws IOException If the reader cannot be read from.
+	 */
+	private static String readLine(Reader in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c == -1)
+				return line.length() > 0 ? line.toString(): null;
+			if (line.length() <= MAX_LINE_LENGTH)
+				line.append((char)c);
+		}
+		if (line.length() > 0 && line.charAt(line.length() - 1) == '\r')
+			line.setLength(line.length() - 1);
+		return line.toString();
+	}
+	
+	
+	
+	/**
+	 * Carries out a command.
+	 * @param line The command.
+	 * @param started The ids of the games started over the connection.
+	 * @return The rest of the reply after OK.
+	 * @throws IllegalArgumentException If the command is not valid.
+	 */
+	private String execute(String line, ArrayList<Long> started) {
+		if (line.length() > MAX_LINE_LENGTH)
+			throw new IllegalArgumentException("Command too long");
+		String[] words = line.trim().split("\\s+");
+		switch (words[0].toUpperCase()) {
+		case "NEW":
+			long id = newGame(words);
+			started.add(id);
+			return " " + id;
+		case "DROP":
+			expectWords(words, 3);
+			return drop(session(words[1]), parseInt(words[2]) - 1);
+		case "AI":
+			expectWords(words, 2);
+			return computerMove(session(words[1]));
+		case "STATE":
+			expectWords(words, 2);
+			return state(session(words[1]).game.getSnapshot());
+		case "STATS":
+			expectWords(words, 1);
+			return stats();
+		case "END":
+			expectWords(words, 2);
+			long endId = parseId(words[1]);
+			if (sessions.remove(endId) == null)
+				throw new IllegalArgumentException("No game " + words[1]);
+			started.remove(endId);
+			return "";
+		default:
+			throw new IllegalArgumentException("Unknown command " + words[0]);
+		}
+	}
+	
+	
+	
+	/**
+	 * Starts a game from the words of a NEW command.
+	 * @param words The words of the command.
+	 * @return The id of the game.
+	 * @throws IllegalArgumentException If the difficulty or the geometry is
+	 * not valid.
+	 */
+	private long newGame(String[] words) {
+		if (words.length != 1 && words.length != 2 && words.length != 5)
+			throw new IllegalArgumentException("Usage: NEW [difficulty [rows columns line length]]");
+		Difficulty difficulty = Difficulty.HARD;
+		if (words.length > 1) {
+			try {
+				difficulty = Difficulty.valueOf(words[1].toUpperCase());
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown difficulty " + words[1]);
+			}
+		}
+		Geometry geometry = Geometry.STANDARD;
+		if (words.length > 2)
+			geometry = Geometry.of(parseInt(words[2]), parseInt(words[3]), parseInt(words[4]));
+		
+		ConnectFour game = new ConnectFour(geometry, Token.P1);
+		game.setDifficulty(difficulty);
+		game.setOpeningBook(book);
+		game.setTablebase(tablebase);
+		game.setTableSize(tableSize);
+		long id = nextId.getAndIncrement();
+		sessions.put(id, new Session(id, game, difficulty));
+		return id;
+	}
+	
+	
+	
+	/**
+	 * Drops a token in a game for the player on move.
+	 * @param session The game.
+	 * @param column The column.
+	 * @return The status of the game.
+	 * @throws IllegalArgumentException If the game is over or the column is
+	 * full or off the grid.
+	 */
+	private String drop(Session session, int column) {
+		ConnectFour game = session.game;
+		session.lock.lock();
+		try {
+			if (game.isOver())
+				throw new IllegalArgumentException("Game over");
+			if (!game.validColumn(column))
+				throw new IllegalArgumentException("Invalid column " + (column + 1));
+			game.drop(column);
+		}
+		finally {
+			session.lock.unlock();
+		}
+		movesPlayed.incrementAndGet();
+		return " " + status(game.getSnapshot());
+	}
+	
+	
+	
+	/**
+	 * Has the computer move in a game for the player on move, waiting for the
+	 * scheduler to search the move.
+	 * @param session The game.
+	 * @return The column and the status of the game.
+	 * @throws IllegalArgumentException If the game is over, the server is
+	 * closing or the move could not be found.
+	 */
+	private String computerMove(Session session) {
+		ConnectFour game = session.game;
+		int column;
+		try {
+			column = scheduler.submit(session.id, session.difficulty, budget -> {
+				session.lock.lock();
+				try {
+					if (game.isOver())
+						throw new IllegalArgumentException("Game over");
+					return game.computerTurn(budget);
+				}
+				finally {
+					session.lock.unlock();
+				}
+			}).join();
+		}
+		catch (IllegalStateException e) {
+			throw new IllegalArgumentException("Server closing");
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof IllegalArgumentException)
+				throw (IllegalArgumentException)e.getCause();
+			throw new IllegalArgumentException("Computer move failed: " + e.getCause());
+		}
+		movesPlayed.incrementAndGet();
+		return " " + (column + 1) + " " + status(game.getSnapshot());
+	}
+	
+	
+	
+	/**
+	 * Returns the reply to a STATS command.
+	 * @return The statistics of the scheduler.
+	 */
+	private String stats() {
+		return String.format(" queued=%d peak=%d searched=%d wait=%.1f maxwait=%.1f" +
+				" search=%.1f maxsearch=%.1f degraded=%d shed=%d", scheduler.getQueueDepth(),
+				scheduler.getPeakQueueDepth(), scheduler.getCompleted(),
+				millis(scheduler.getAverageWaitTime()), millis(scheduler.getMaxWaitTime()),
+				millis(scheduler.getAverageSearchTime()), millis(scheduler.getMaxSearchTime()),
+				scheduler.getDegraded(), scheduler.getShed());
+	}
+	
+	
+	
+	/**
+	 * Returns the reply to a STATE command for the given snapshot.
+	 * @param snapshot The snapshot.
+	 * @return The status, the player on move and the columns played.
+	 */
+	private static String state(GameSnapshot snapshot) {
+		StringBuilder reply = new StringBuilder();
+		reply.append(' ').append(status(snapshot)).append(' ').append(snapshot.curPlayer());
+		for (int column : snapshot.getMoves())
+			reply.append(' ').append(column + 1);
+		return reply.toString();
+	}
+	
+	
+	
+	/**
+	 * Returns the status of the game in the given snapshot.
+	 * @param snapshot The snapshot.
+	 * @return PLAYING, DRAW or the winning player.
+	 */
+	private static String status(GameSnapshot snapshot) {
+		if (snapshot.getWinner() != Token.EMPTY)
+			return snapshot.getWinner().toString();
+		return snapshot.isOver() ? "DRAW": "PLAYING";
+	}
+	
+	
+	
+	/**
+	 * Returns the game with the given id.
+	 * @param word The id.
+	 * @return The game.
+	 * @throws IllegalArgumentException If there is no such game.
+	 */
+	private Session session(String word) {
+		Session session = sessions.get(parseId(word));
+		if (session == null)
+			throw new IllegalArgumentException("No game " + word);
+		return session;
+	}
+	
+	
+	
+	private static double millis(Duration duration) {
+		return duration.toNanos() / 1e6;
+	}
+	
+	
+	
+	private static void expectWords(String[] words, int count) {
+		if (words.length != count)
+			throw new IllegalArgumentException("Expected " + (count - 1) +
+					" arguments to " + words[0].toUpperCase());
+	}
+	
+	
+	
+	private static long parseId(String word) {
+		try {
+			return Long.parseLong(word);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a game id: " + word);
+		}
+	}
+	
+	
+	
+	private static int parseInt(String word) {
+		try {
+			return Integer.parseInt(word);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number: " + word);
+		}
+	}
+	
+}
@@ -0,0 +1,137 @@
+package tech.octopusdragon.connectfour;
+
+/**
+ * An unchangeable copy of a game's position, published by ConnectFour after
+ * each move. A snapshot can be read from any thread without locking, while
+ * the game itself goes on changing.
+ * @author Alex Gill
+ *
+ */
+public final class GameSnapshot {
+	
+	private final Token[][] grid;	// The rack grid, top row first
+	private final int[] heights;	// The number of tokens in each column
+	private final int[] moves;		// The columns played so far, in order
+	private final Token curPlayer;	// The player on move
+	private final Token winner;		// The winner or EMPTY if no one has won yet
+	private final long hash;		// The Zobrist hash of the position
+	
+	
+	/**
+	 * This constructor instantiates a snapshot of the given position. The
+	 * arrays are not copied, so they must not be changed afterwards.
+	 * @param grid The rack grid.
+	 * @param heights The number of tokens in each column.
+	 * @param moves The columns played so far.
+	 * @param curPlayer The player on move.
+	 * @param winner The winner or EMPTY if no one has won yet.
+	 * @param hash The Zobrist hash of the position.
+	 */
+	GameSnapshot(Token[][] grid, int[] heights, int[] moves, Token curPlayer,
+			Token winner, long hash) {
+		this.grid = grid;
+		this.heights = heights;
+		this.moves = moves;
+		this.curPlayer = curPlayer;
+		this.winner = winner;
+		this.hash = hash;
+	}
+	
+	
+	
+	/**
+	 * Returns a copy of the rack grid.
+	 * @return The rack grid.
+	 */
+	public Token[][] getGrid() {
+		Token[][] copy = new Token[grid.length][];
+		for (int row = 0; row < grid.length; row++)
+			copy[row] = grid[row].clone();
+		return copy;
+	}
+	
+	
+	
+	/**
+	 * Returns the token occupying the given space of the rack grid.
+	 * @param row The row, counting down from the top.
+	 * @param column The column.
+	 * @return The token in the space or EMPTY if the space is empty.
+	 */
+	public Token tokenAt(int row, int column) {
+		return grid[row][column];
+	}
+	
+	
+	
+	/**
+	 * Returns the columns played so far, in order.
+	 * @return The columns played.
+	 */
+	public int[] getMoves() {
+		return moves.clone();
+	}
+	
+	
+	
+	/**
+	 * Returns the Zobrist hash of the position.
+	 * @return The hash of the position.
+	 */
+	public long getHash() {
+		return hash;
+	}
+	
+	
+	
+	/**
+	 * Returns the Token of the current player.
+	 * @return The Token of the current player.
+	 */
+	public Token curPlayer() {
+		return curPlayer;
+	}
+	
+	
+	
+	/**
+	 * Returns the winner.
+	 * @return The Token type of the winner or EMPTY if no one has won yet.
+	 */
+	public Token getWinner() {
+		return winner;
+	}
+	
+	
+	
+	/**
+	 * Checks to see if the game is over.
+	 * @return true if the game is over or false otherwise.
+	 */
+	public boolean isOver() {
+		return winner != Token.EMPTY || moves.length == grid.length * heights.length;
+	}
+	
+	
+	
+	/**
+	 * Checks whether a token can be dropped in the given column.
+	 * @param column The column.
+	 * @return Whether the column is valid.
+	 */
+	public boolean validColumn(int column) {
+		return column >= 0 && column < heights.length && heights[column] < grid.length;
+	}
+	
+	
+	
+	/**
+	 * Returns the lowest available space within the given column.
+	 * @param column The column.
+	 * @return The lowest available row or -1 if full.
+	 */
+	public int lowestAvailableSpace(int column) {
+		return grid.length - 1 - heights[column];
+	}
+	
+}
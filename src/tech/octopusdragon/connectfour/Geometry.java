@@ -0,0 +1,197 @@
+package tech.octopusdragon.connectfour;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The size of a Connect Four grid and the number of tokens in a row needed to
+ * win, along with the tables ConnectFour precomputes for it. There is only
+ * one instance per geometry, so the tables are built once and shared by every
+ * game using it.
+ * <p>
+ * Each column takes up stride bits of a bitboard, starting with the bottom
+ * space. When the grid is small enough, stride is one more than the number
+ * of rows, so that the standard grid keeps the layout and hashes it had. Lines
+ * are never found by shifting, so the extra bit is not needed, and grids of up
+ * to 64 spaces fit.
+ * @author Alex Gill
+ *
+ */
+public final class Geometry {
+	
+	public static final int MAX_SPACES = Long.SIZE;	// Spaces in a bitboard
+	public static final int MAX_LINE_LENGTH = 8;	// Longest line to win with
+	
+	// Every geometry made so far, by rows, columns and line length
+	private static final ConcurrentHashMap<Long, Geometry> GEOMETRIES = new ConcurrentHashMap<>();
+	
+	// The standard 6 by 7 grid with 4 in a row
+	public static final Geometry STANDARD = of(ConnectFour.ROWS,
+			ConnectFour.COLUMNS, ConnectFour.LINE_LENGTH);
+	
+	final int rows;			// Number of rows on the grid
+	final int columns;		// Number of columns on the grid
+	final int lineLength;	// Number in a row needed to win
+	final int stride;		// Bits taken up by each column of a bitboard
+	final int spaces;		// Number of spaces on the grid
+	
+	// Random keys used to hash positions. There is one key per player per
+	// bitboard bit plus one for the second player being on move.
+	final long[][] zobristKeys;
+	final long zobristP2ToMove;
+	
+	// The keys of the spaces each bit is mirrored onto, in the column as far
+	// from the other edge, to hash mirror images with
+	final long[][] zobristMirrorKeys;
+	
+	// Columns from the center outwards. Center columns are part of more lines,
+	// so they are usually better moves and are searched first.
+	final int[] centerOrder;
+	
+	// Every window of lineLength spaces that a line can be made in, as a mask
+	// of its bitboard bits, and the windows each bitboard bit is part of. A
+	// window is worth points to a player if only they have tokens in it, more
+	// for more tokens.
+	final long[] windowMasks;
+	final int[][] spaceWindows;
+	final int[] windowScores;
+	
+	
+	/**
+	 * This constructor builds the tables for the given geometry.
+	 * @param rows The number of rows.
+	 * @param columns The number of columns.
+	 * @param lineLength The number in a row needed to win.
+	 */
+	private Geometry(int rows, int columns, int lineLength) {
+		this.rows = rows;
+		this.columns = columns;
+		this.lineLength = lineLength;
+		this.stride = columns * (rows + 1) <= MAX_SPACES ? rows + 1: rows;
+		this.spaces = rows * columns;
+		
+		// Hash keys
+		zobristKeys = new long[2][columns * stride];
+		Random rand = new Random(4);
+		for (int i = 0; i < zobristKeys.length; i++)
+			for (int j = 0; j < zobristKeys[i].length; j++)
+				zobristKeys[i][j] = rand.nextLong();
+		zobristP2ToMove = rand.nextLong();
+		zobristMirrorKeys = new long[2][columns * stride];
+		for (int i = 0; i < zobristKeys.length; i++)
+			for (int column = 0; column < columns; column++)
+				for (int height = 0; height < stride; height++)
+					zobristMirrorKeys[i][column * stride + height] =
+							zobristKeys[i][(columns - 1 - column) * stride + height];
+		
+		// Center order
+		centerOrder = new int[columns];
+		for (int i = 0; i < columns; i++)
+			centerOrder[i] = columns / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+		
+		// Windows
+		ArrayList<Long> masks = new ArrayList<>();
+		ArrayList<ArrayList<Integer>> windows = new ArrayList<>();
+		for (int i = 0; i < columns * stride; i++)
+			windows.add(new ArrayList<>());
+		int[][] steps = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};	// Column, height
+		for (int column = 0; column < columns; column++) {
+			for (int height = 0; height < rows; height++) {
+				for (int[] step : steps) {
+					int endColumn = column + step[0] * (lineLength - 1);
+					int endHeight = height + step[1] * (lineLength - 1);
+					if (endColumn >= columns || endHeight < 0 || endHeight >= rows)
+						continue;
+					long mask = 0;
+					for (int i = 0; i < lineLength; i++) {
+						int space = (column + step[0] * i) * stride + height + step[1] * i;
+						windows.get(space).add(masks.size());
+						mask |= 1L << space;
+					}
+					masks.add(mask);
+				}
+			}
+		}
+		windowMasks = masks.stream().mapToLong(Long::longValue).toArray();
+		spaceWindows = new int[windows.size()][];
+		for (int i = 0; i < spaceWindows.length; i++)
+			spaceWindows[i] = windows.get(i).stream().mapToInt(Integer::intValue).toArray();
+		
+		// Window scores go up tenfold with each token
+		windowScores = new int[lineLength + 1];
+		for (int count = 1; count <= lineLength; count++)
+			windowScores[count] = count == 1 ? 1: windowScores[count - 1] * 10;
+	}
+	
+	
+	
+	/**
+	 * Returns the geometry with the given size and line length.
+	 * @param rows The number of rows.
+	 * @param columns The number of columns.
+	 * @param lineLength The number in a row needed to win.
+	 * @return The geometry.
+	 * @throws IllegalArgumentException If the grid has more than MAX_SPACES
+	 * spaces or the line length is out of range.
+	 */
+	public static Geometry of(int rows, int columns, int lineLength) {
+		if (rows < 1 || columns < 1 || rows * columns > MAX_SPACES)
+			throw new IllegalArgumentException("Grid must have 1 to " + MAX_SPACES +
+					" spaces: " + rows + " by " + columns);
+		if (lineLength < 2 || lineLength > MAX_LINE_LENGTH || lineLength > Math.max(rows, columns))
+			throw new IllegalArgumentException("Line length must be from 2 to " +
+					MAX_LINE_LENGTH + " and fit on the grid: " + lineLength);
+		long key = (long)rows << 32 | columns << 8 | lineLength;
+		return GEOMETRIES.computeIfAbsent(key, k -> new Geometry(rows, columns, lineLength));
+	}
+	
+	
+	
+	/**
+	 * Returns the number of rows on the grid.
+	 * @return The number of rows.
+	 */
+	public int getRows() {
+		return rows;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of columns on the grid.
+	 * @return The number of columns.
+	 */
+	public int getColumns() {
+		return columns;
+	}
+	
+	
+	
+	/**
+	 * Returns the number in a row needed to win.
+	 * @return The line length.
+	 */
+	public int getLineLength() {
+		return lineLength;
+	}
+	
+	
+	
+	/**
+	 * Returns whether a line goes through the given bit of the given bitboard.
+	 * Only the windows the bit is part of are checked.
+	 * @param bitboard The bitboard of a single player.
+	 * @param space The bit.
+	 * @return Whether there is a line through the bit.
+	 */
+	boolean hasLine(long bitboard, int space) {
+		for (int window : spaceWindows[space]) {
+			long mask = windowMasks[window];
+			if ((bitboard & mask) == mask)
+				return true;
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,47 @@
+package tech.octopusdragon.connectfour;
+
+/**
+ * A move chosen by the computer player, along with the statistics of the
+ * search that chose it.
+ * @author Alex Gill
+ *
+ */
+public class MoveResult {
+	
+	private final int column;			// The column to drop the token in
+	private final SearchStats stats;	// Statistics of the search, if any
+	
+	
+	/**
+	 * This constructor instantiates a result for the given move.
+	 * @param column The column to drop the token in.
+	 * @param stats The statistics of the search or null if the move was not
+	 * found by a minimax search.
+	 */
+	public MoveResult(int column, SearchStats stats) {
+		this.column = column;
+		this.stats = stats;
+	}
+	
+	
+	
+	/**
+	 * Returns the column to drop the token in.
+	 * @return The column.
+	 */
+	public int getColumn() {
+		return column;
+	}
+	
+	
+	
+	/**
+	 * Returns the statistics of the search that chose the move.
+	 * @return The statistics or null if the move came from the opening book,
+	 * the solver or was random.
+	 */
+	public SearchStats getSearchStats() {
+		return stats;
+	}
+	
+}
@@ -0,0 +1,213 @@
+package tech.octopusdragon.connectfour;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A book of solved opening positions, read from a file made by
+ * OpeningBookGenerator. The file is memory-mapped read-only, so opening it
+ * costs almost nothing, its pages are shared with every other process using
+ * the same file, and one book can be used by many games at once.
+ * <p>
+ * The file starts with a header of the magic number, the maximum number of
+ * moves in a position and the number of entries, all ints. It is followed by
+ * one long per position, sorted, each holding the position's canonical key
+ * from Solver.Position in the upper bits and the best column and its exact
+ * score in the lower bits. A position is looked up with a binary search.
+ * <p>
+ * A position and its mirror image share the entry of the canonical image,
+ * and the best column is stored as seen in that image, so it is mirrored
+ * back when the position is the other image.
+ * <p>
+ * A book of every position up to two moves in ships with the game's
+ * resources as DEFAULT_FILE, so there is a book even when the working
+ * directory has none. A book in the working directory takes its place.
+ * @author Alex Gill
+ *
+ */
+public class OpeningBook {
+	
+	public static final String DEFAULT_FILE = "book.bin";	// Default file name
+	
+	static final int MAGIC = 0x43344232;	// "C4B2"
+	static final int HEADER_SIZE = 12;		// Bytes in the header
+	static final int MOVE_BITS = 3;			// Bits for the best column
+	static final int SCORE_BITS = 6;		// Bits for the score
+	static final int SCORE_OFFSET = 32;		// Added to make scores positive
+	
+	private ByteBuffer buffer;	// The mapped file
+	private int maxPly;			// Moves in the deepest positions in the book
+	private int size;			// Number of positions in the book
+	
+	
+	/**
+	 * This constructor instantiates a book from an already mapped file.
+	 * @param buffer The contents of the book file.
+	 * @throws IOException If the file is not a book.
+	 */
+	private OpeningBook(ByteBuffer buffer) throws IOException {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not an opening book file");
+		this.buffer = buffer;
+		this.maxPly = buffer.getInt(4);
+		this.size = buffer.getInt(8);
+		if (buffer.capacity() < HEADER_SIZE + (long)size * Long.BYTES)
+			throw new IOException("Opening book file is truncated");
+	}
+	
+	
+	
+	/**
+	 * Opens the book in the given file by memory-mapping it.
+	 * @param file The book file.
+	 * @return The book.
+	 * @throws IOException If the file cannot be read or is not a book.
+	 */
+	public static OpeningBook open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	
+	
+	/**
+	 * Opens the book in DEFAULT_FILE in the working directory if there is one,
+	 * or else the book bundled with the game's resources.
+	 * @return The book or null if there is no readable book.
+	 */
+	public static OpeningBook openDefault() {
+		Path file = Paths.get(DEFAULT_FILE);
+		try {
+			if (Files.isReadable(file))
+				return open(file);
+			return openBundled();
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+	
+	
+	
+	/**
+	 * Opens the book bundled with the game's resources. A resource may be
+	 * inside a jar, so it is read into memory rather than mapped. The bundled
+	 * book is small.
+	 * @return The book or null if there is no bundled book.
+	 * @throws IOException If the book cannot be read or is not a book.
+	 */
+	public static OpeningBook openBundled() throws IOException {
+		try (InputStream in = OpeningBook.class.getClassLoader().getResourceAsStream(DEFAULT_FILE)) {
+			if (in == null)
+				return null;
+			return new OpeningBook(ByteBuffer.wrap(in.readAllBytes()).asReadOnlyBuffer());
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the best column in the given game's position if the position is
+	 * in the book.
+	 * @param game The game.
+	 * @return The best column or -1 if the position is not in the book.
+	 */
+	public int bestMove(ConnectFour game) {
+		if (game.getGeometry() != Geometry.STANDARD || game.getMoves().length > maxPly)
+			return -1;
+		Solver.Position position = Solver.Position.of(game);
+		int index = find(position.canonicalKey());
+		if (index < 0)
+			return -1;
+		int column = (int)(entry(index) >>> SCORE_BITS) & ((1 << MOVE_BITS) - 1);
+		return position.isMirrored() ? Solver.WIDTH - 1 - column: column;
+	}
+	
+	
+	
+	/**
+	 * Returns the exact score of the given game's position for the player on
+	 * move if the position is in the book.
+	 * @param game The game.
+	 * @return The score or Solver.INVALID_MOVE if the position is not in the book.
+	 */
+	public int score(ConnectFour game) {
+		if (game.getGeometry() != Geometry.STANDARD || game.getMoves().length > maxPly)
+			return Solver.INVALID_MOVE;
+		int index = find(Solver.Position.of(game).canonicalKey());
+		if (index < 0)
+			return Solver.INVALID_MOVE;
+		return ((int)entry(index) & ((1 << SCORE_BITS) - 1)) - SCORE_OFFSET;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of moves in the deepest positions in the book.
+	 * @return The maximum number of moves.
+	 */
+	public int getMaxPly() {
+		return maxPly;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of positions in the book.
+	 * @return The number of positions.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	
+	
+	/**
+	 * Packs a position's key, best column and score into a book entry.
+	 * @param key The key of the position.
+	 * @param bestMove The best column.
+	 * @param score The exact score of the position.
+	 * @return The entry.
+	 */
+	static long pack(long key, int bestMove, int score) {
+		return key << (MOVE_BITS + SCORE_BITS) | (long)bestMove << SCORE_BITS |
+				(score + SCORE_OFFSET);
+	}
+	
+	
+	
+	/**
+	 * Binary searches the entries for the given key.
+	 * @param key The key of the position.
+	 * @return The index of the entry or -1 if it is not in the book.
+	 */
+	private int find(long key) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long middleKey = entry(middle) >>> (MOVE_BITS + SCORE_BITS);
+			if (middleKey < key)
+				low = middle + 1;
+			else if (middleKey > key)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+	
+	
+	
+	private long entry(int index) {
+		return buffer.getLong(HEADER_SIZE + index * Long.BYTES);
+	}
+	
+}
@@ -0,0 +1,132 @@
+package tech.octopusdragon.connectfour;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Generates an opening book file for OpeningBook by solving every position
+ * reachable within a given number of moves. Positions already won are left
+ * out. Solving the earliest positions is slow, so this is meant to be run
+ * offline. A position and its mirror image share an entry, so only one of
+ * them is solved.
+ * <p>
+ * Usage: OpeningBookGenerator [file] [max moves], by default book.bin and 4.
+ * The book bundled in resources/book.bin was made with "OpeningBookGenerator
+ * resources/book.bin 2", which takes about an hour on one core. Every move
+ * deeper takes several times as long.
+ * @author Alex Gill
+ *
+ */
+public class OpeningBookGenerator {
+	
+	public static final int DEFAULT_MAX_PLY = 4;	// Default moves to go up to
+	
+	private Solver solver;		// Solves the positions
+	private HashSet<Long> keys;	// Keys of the positions found so far
+	private long[] entries;		// Entries of the positions solved so far
+	private int size;			// Number of entries
+	
+	
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args.length > 0 ? args[0]: OpeningBook.DEFAULT_FILE);
+		int maxPly = args.length > 1 ? Integer.parseInt(args[1]): DEFAULT_MAX_PLY;
+		
+		long start = System.nanoTime();
+		OpeningBookGenerator generator = new OpeningBookGenerator();
+		generator.generate(maxPly);
+		generator.write(file, maxPly);
+		System.out.printf("Wrote %d positions to %s in %.1f s%n",
+				generator.size, file, (System.nanoTime() - start) / 1e9);
+	}
+	
+	
+	
+	/**
+	 * This constructor instantiates a generator with an empty book.
+	 */
+	public OpeningBookGenerator() {
+		solver = new Solver();
+		keys = new HashSet<>();
+		entries = new long[1024];
+		size = 0;
+	}
+	
+	
+	
+	/**
+	 * Solves every position with at most the given number of moves.
+	 * @param maxPly The maximum number of moves.
+	 */
+	public void generate(int maxPly) {
+		addPositions(new Solver.Position(), maxPly);
+	}
+	
+	
+	
+	/**
+	 * Writes the book to the given file, replacing it if it exists.
+	 * @param file The file.
+	 * @param maxPly The maximum number of moves the book was generated for.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void write(Path file, int maxPly) throws IOException {
+		long[] sorted = Arrays.copyOf(entries, size);
+		Arrays.sort(sorted);
+		ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER_SIZE + size * Long.BYTES);
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		buffer.putInt(OpeningBook.MAGIC);
+		buffer.putInt(maxPly);
+		buffer.putInt(size);
+		for (long entry : sorted)
+			buffer.putLong(entry);
+		buffer.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+	
+	
+	
+	/**
+	 * Solves the given position and every position reachable from it within
+	 * the remaining moves, skipping positions already solved and mirror
+	 * images of them.
+	 * @param position The position.
+	 * @param maxPly The maximum number of moves.
+	 */
+	private void addPositions(Solver.Position position, int maxPly) {
+		if (!keys.add(position.canonicalKey()))
+			return;
+		
+		// Solve the position, storing the best move as seen in the canonical
+		// image
+		int bestMove = solver.bestMove(position);
+		if (position.isMirrored())
+			bestMove = Solver.WIDTH - 1 - bestMove;
+		int score = solver.solve(position);
+		if (size == entries.length)
+			entries = Arrays.copyOf(entries, size * 2);
+		entries[size++] = OpeningBook.pack(position.canonicalKey(), bestMove, score);
+		
+		// Go on to the positions after each move that does not win
+		if (position.getMoves() >= maxPly)
+			return;
+		for (int column = 0; column < Solver.WIDTH; column++) {
+			if (position.canPlay(column) && !position.isWinningMove(column)) {
+				Solver.Position next = new Solver.Position(position);
+				next.playColumn(column);
+				addPositions(next, maxPly);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,53 @@
+package tech.octopusdragon.connectfour;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds the executor that computer moves are searched on in the background.
+ * Each search gets a virtual thread when the JVM has them and otherwise a
+ * thread from a shared pool. Either way the threads are daemons, so they
+ * never keep the program running.
+ * @author Alex Gill
+ *
+ */
+final class SearchExecutor {
+	
+	private static final ExecutorService EXECUTOR = createExecutor();
+	
+	
+	private SearchExecutor() {
+	}
+	
+	
+	
+	/**
+	 * Returns the shared executor.
+	 * @return The executor.
+	 */
+	static ExecutorService get() {
+		return EXECUTOR;
+	}
+	
+	
+	
+	/**
+	 * Creates a virtual thread per task executor if the JVM has one, or a
+	 * cached pool of daemon threads otherwise.
+	 * @return The executor.
+	 */
+	private static ExecutorService createExecutor() {
+		try {
+			return (ExecutorService)Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "connect-four-search");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+	
+}
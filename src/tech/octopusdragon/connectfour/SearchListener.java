@@ -0,0 +1,17 @@
+package tech.octopusdragon.connectfour;
+
+/**
+ * Receives the statistics of each search made by the computer player.
+ * @author Alex Gill
+ *
+ */
+public interface SearchListener {
+	
+	/**
+	 * Called on the searching thread when a search has finished, before the
+	 * computer's move is played.
+	 * @param stats The statistics of the search.
+	 */
+	void searchFinished(SearchStats stats);
+	
+}
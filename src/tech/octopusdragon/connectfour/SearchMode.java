@@ -0,0 +1,11 @@
+package tech.octopusdragon.connectfour;
+
+/**
+ * Ways the computer can search with more than one thread.
+ * @author Alex Gill
+ *
+ */
+public enum SearchMode {
+	ROOT_SPLIT,	// Each thread searches different columns
+	LAZY_SMP	// Each thread searches every column, sharing what it finds
+}
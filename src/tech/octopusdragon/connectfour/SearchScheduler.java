@@ -0,0 +1,446 @@
+package tech.octopusdragon.connectfour;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Runs computer searches for many games on a fixed number of worker threads,
+ * so that a burst of requests is queued rather than all searched at once.
+ * <p>
+ * Each search is given the time budget set for its difficulty. Requests are
+ * queued per session and the sessions take turns: a worker takes the oldest
+ * request of the next session in line, and that session goes to the back of
+ * the line if it has more. A session sending many requests only slows down
+ * its own.
+ * <p>
+ * Searches are kept within a latency target when they come in faster than
+ * the workers can search them. A request that has waited has its budget cut
+ * to the time left before the target. A request that would wait past the
+ * target is not queued at all: it is searched at once on a separate pool of
+ * as many threads as there are workers, with no budget to speak of, so the
+ * computer plays a book move or the best move after a shallow search.
+ * Either way the move comes in time, at the cost of playing strength.
+ * <p>
+ * EASY moves are random and not searched, so they are made at once on the
+ * calling thread and never wait behind searches.
+ * <p>
+ * The scheduler keeps count of the requests waiting, how long they waited,
+ * how long they were searched for and how many were cut short.
+ * @author Alex Gill
+ *
+ */
+public class SearchScheduler implements AutoCloseable {
+	
+	/**
+	 * A search waiting to be run.
+	 */
+	private static class Request<T> {
+		Duration budget;					// Time the search may take
+		final Function<Duration, T> search;	// Searches with the budget
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		final long submitted = System.nanoTime();	// When it was queued
+		
+		Request(Duration budget, Function<Duration, T> search) {
+			this.budget = budget;
+			this.search = search;
+		}
+		
+		/**
+		 * Runs the search and completes the result with what it returns.
+		 */
+		void run() {
+			try {
+				result.complete(search.apply(budget));
+			}
+			catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		}
+	}
+	
+	public static final Duration DEFAULT_LATENCY_TARGET = Duration.ofSeconds(1);
+	
+	// The budget of a search made at once instead of being queued. The
+	// shallowest search always finishes, and deeper ones stop right away.
+	public static final Duration SHALLOW_BUDGET = Duration.ZERO;
+	
+	private final Thread[] workers;		// Threads the searches run on
+	private final ExecutorService shallowWorkers;	// Threads shed requests run on
+	private final EnumMap<Difficulty, Duration> budgets;	// Time per search
+	
+	// Requests waiting per session and the sessions with requests waiting in
+	// the order they take turns. Both are guarded by the scheduler.
+	private final HashMap<Object, ArrayDeque<Request<?>>> queues;
+	private final ArrayDeque<Object> sessions;
+	private Duration latencyTarget;		// Time a request should take at most
+	private int queued;					// Requests waiting
+	private int running;				// Requests being searched
+	private long estimateNanos;			// Moving average of the search time
+	private int peakQueued;				// Most requests waiting at once
+	private long completed;				// Requests run
+	private long totalWaitNanos;		// Time spent waiting by requests run
+	private long maxWaitNanos;			// Longest time a request waited
+	private long totalSearchNanos;		// Time spent searching
+	private long maxSearchNanos;		// Longest time a search took
+	private long degraded;				// Requests whose budget was cut
+	private long shed;					// Requests searched shallowly at once
+	private boolean closed;				// Whether the scheduler was closed
+	
+	
+	/**
+	 * This constructor instantiates a scheduler with a worker per processor.
+	 */
+	public SearchScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	
+	
+	/**
+	 * This constructor instantiates a scheduler with the given number of
+	 * workers. EASY is not searched, MEDIUM and HARD get 100 and 500
+	 * milliseconds, and PERFECT gets 800 milliseconds, half of which the
+	 * solver may use before the search takes over. The latency target is
+	 * DEFAULT_LATENCY_TARGET.
+	 * @param threads The number of workers.
+	 */
+	public SearchScheduler(int threads) {
+		latencyTarget = DEFAULT_LATENCY_TARGET;
+		budgets = new EnumMap<>(Difficulty.class);
+		budgets.put(Difficulty.MEDIUM, Duration.ofMillis(100));
+		budgets.put(Difficulty.HARD, Duration.ofMillis(500));
+		budgets.put(Difficulty.PERFECT, Duration.ofMillis(800));
+		queues = new HashMap<>();
+		sessions = new ArrayDeque<>();
+		workers = new Thread[Math.max(1, threads)];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(this::work, "connect-four-scheduler-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		shallowWorkers = Executors.newFixedThreadPool(workers.length, runnable -> {
+			Thread thread = new Thread(runnable, "connect-four-scheduler-shallow");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	
+	
+	/**
+	 * Sets the time budget searches of the given difficulty are run with.
+	 * @param difficulty The difficulty.
+	 * @param budget The time budget or null to search to the maximum depth.
+	 */
+	public synchronized void setBudget(Difficulty difficulty, Duration budget) {
+		if (budget == null)
+			budgets.remove(difficulty);
+		else
+			budgets.put(difficulty, budget);
+	}
+	
+	
+	
+	/**
+	 * Returns the time budget searches of the given difficulty are run with.
+	 * @param difficulty The difficulty.
+	 * @return The time budget or null if they search to the maximum depth.
+	 */
+	public synchronized Duration getBudget(Difficulty difficulty) {
+		return budgets.get(difficulty);
+	}
+	
+	
+	
+	/**
+	 * Sets the time requests should take at most, from being submitted to
+	 * being searched.
+	 * @param latencyTarget The latency target or null to never cut searches
+	 * short.
+	 */
+	public synchronized void setLatencyTarget(Duration latencyTarget) {
+		this.latencyTarget = latencyTarget;
+	}
+	
+	
+	
+	/**
+	 * Queues a search for the given session. The search is handed the budget
+	 * of the given difficulty and is run on one of the workers once the
+	 * sessions ahead of it have had their turns. If the future is cancelled
+	 * before the search starts, the search is skipped.
+	 * <p>
+	 * If the request would not be searched before the latency target, it is
+	 * searched at once on the shallow pool with SHALLOW_BUDGET instead. A
+	 * search given a budget when its difficulty has none should search as
+	 * well as it can in the time. An EASY request is run on this thread, and
+	 * the future returned is already complete.
+	 * @param session The session, compared with equals.
+	 * @param difficulty The difficulty of the search.
+	 * @param search The search, given the time budget or null.
+	 * @return The future result of the search.
+	 * @throws IllegalStateException If the scheduler was closed.
+	 */
+	public <T> CompletableFuture<T> submit(Object session, Difficulty difficulty,
+			Function<Duration, T> search) {
+		Request<T> request;
+		synchronized (this) {
+			if (closed)
+				throw new IllegalStateException("Scheduler closed");
+			request = new Request<>(budgets.get(difficulty), search);
+			if (difficulty != Difficulty.EASY) {
+				if (!overloaded()) {
+					enqueue(session, request);
+					return request.result;
+				}
+				request.budget = SHALLOW_BUDGET;
+				shed++;
+				shallowWorkers.execute(request::run);
+				return request.result;
+			}
+		}
+		request.run();
+		return request.result;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of requests cut short because they waited, so that
+	 * they were searched with less than the budget of their difficulty.
+	 * @return The number of requests.
+	 */
+	public synchronized long getDegraded() {
+		return degraded;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of requests searched at once on the shallow pool
+	 * with SHALLOW_BUDGET because they would have waited past the latency
+	 * target.
+	 * @return The number of requests.
+	 */
+	public synchronized long getShed() {
+		return shed;
+	}
+	
+	
+	
+	/**
+	 * Returns whether a request submitted now would wait past the latency
+	 * target, estimating that the requests ahead of it are searched in the
+	 * average time of recent searches. Must be called holding the lock.
+	 * @return Whether the scheduler is overloaded.
+	 */
+	private boolean overloaded() {
+		if (latencyTarget == null)
+			return false;
+		int ahead = queued + running - workers.length + 1;
+		if (ahead <= 0)
+			return false;
+		long rounds = (ahead + workers.length - 1) / workers.length;
+		return rounds * estimateNanos > latencyTarget.toNanos();
+	}
+	
+	
+	
+	/**
+	 * Adds a request to the queue of its session. Must be called holding the
+	 * lock.
+	 * @param session The session.
+	 * @param request The request.
+	 */
+	private void enqueue(Object session, Request<?> request) {
+		ArrayDeque<Request<?>> queue = queues.get(session);
+		if (queue == null) {
+			queue = new ArrayDeque<>();
+			queues.put(session, queue);
+			sessions.add(session);
+		}
+		queue.add(request);
+		queued++;
+		peakQueued = Math.max(peakQueued, queued);
+		notify();
+	}
+	
+	
+	
+	/**
+	 * Returns the number of requests waiting to be searched.
+	 * @return The number of requests.
+	 */
+	public synchronized int getQueueDepth() {
+		return queued;
+	}
+	
+	
+	
+	/**
+	 * Returns the most requests that have been waiting at once.
+	 * @return The number of requests.
+	 */
+	public synchronized int getPeakQueueDepth() {
+		return peakQueued;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of searches run so far.
+	 * @return The number of searches.
+	 */
+	public synchronized long getCompleted() {
+		return completed;
+	}
+	
+	
+	
+	/**
+	 * Returns the average time requests waited before being searched.
+	 * @return The average wait time.
+	 */
+	public synchronized Duration getAverageWaitTime() {
+		return Duration.ofNanos(completed == 0 ? 0: totalWaitNanos / completed);
+	}
+	
+	
+	
+	/**
+	 * Returns the longest time a request waited before being searched.
+	 * @return The longest wait time.
+	 */
+	public synchronized Duration getMaxWaitTime() {
+		return Duration.ofNanos(maxWaitNanos);
+	}
+	
+	
+	
+	/**
+	 * Returns the average time a search took.
+	 * @return The average search time.
+	 */
+	public synchronized Duration getAverageSearchTime() {
+		return Duration.ofNanos(completed == 0 ? 0: totalSearchNanos / completed);
+	}
+	
+	
+	
+	/**
+	 * Returns the longest time a search took.
+	 * @return The longest search time.
+	 */
+	public synchronized Duration getMaxSearchTime() {
+		return Duration.ofNanos(maxSearchNanos);
+	}
+	
+	
+	
+	/**
+	 * Stops the workers once their current searches finish. Requests still
+	 * waiting are cancelled.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		shallowWorkers.shutdown();
+		for (ArrayDeque<Request<?>> queue : queues.values())
+			for (Request<?> request : queue)
+				request.result.completeExceptionally(new CancellationException("Scheduler closed"));
+		queues.clear();
+		sessions.clear();
+		queued = 0;
+		notifyAll();
+	}
+	
+	
+	
+	/**
+	 * Runs requests on a worker until the scheduler is closed.
+	 */
+	private void work() {
+		Request<?> request;
+		while ((request = next()) != null) {
+			long start = System.nanoTime();
+			request.run();
+			long searchNanos = System.nanoTime() - start;
+			synchronized (this) {
+				running--;
+				if (completed == 0)
+					estimateNanos = searchNanos;
+				else
+					estimateNanos += (searchNanos - estimateNanos) / 8;
+				completed++;
+				long waitNanos = start - request.submitted;
+				totalWaitNanos += waitNanos;
+				maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+				totalSearchNanos += searchNanos;
+				maxSearchNanos = Math.max(maxSearchNanos, searchNanos);
+			}
+		}
+	}
+	
+	
+	
+	/**
+	 * Waits for the next request to run, taking it from the session whose
+	 * turn it is. Requests cancelled while waiting are skipped.
+	 * @return The request or null if the scheduler was closed.
+	 */
+	private synchronized Request<?> next() {
+		while (true) {
+			while (sessions.isEmpty()) {
+				if (closed)
+					return null;
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					return null;
+				}
+			}
+			Object session = sessions.poll();
+			ArrayDeque<Request<?>> queue = queues.get(session);
+			Request<?> request = queue.poll();
+			queued--;
+			if (queue.isEmpty())
+				queues.remove(session);
+			else
+				sessions.add(session);
+			if (!request.result.isDone()) {
+				cutBudget(request);
+				running++;
+				return request;
+			}
+		}
+	}
+	
+	
+	
+	
+	/**
+	 * Cuts the budget of a request that has waited so that it finishes by the
+	 * latency target. A request without a budget is cut if the average search
+	 * would not finish in time. Must be called holding the lock.
+	 * @param request The request.
+	 */
+	private void cutBudget(Request<?> request) {
+		if (latencyTarget == null)
+			return;
+		long left = latencyTarget.toNanos() - (System.nanoTime() - request.submitted);
+		long budget = request.budget != null ? request.budget.toNanos(): estimateNanos;
+		if (budget > left) {
+			request.budget = Duration.ofNanos(Math.max(0, left));
+			degraded++;
+		}
+	}
+	
+}
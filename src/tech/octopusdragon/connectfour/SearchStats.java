@@ -0,0 +1,134 @@
+package tech.octopusdragon.connectfour;
+
+import java.time.Duration;
+
+/**
+ * Statistics of one search by the computer player. Evaluations are from the
+ * computer's point of view, with wins and losses at the ends of the range of
+ * int.
+ * @author Alex Gill
+ *
+ */
+public class SearchStats {
+	
+	private final long nodes;			// Positions searched
+	private final long cutoffs;			// Moves that caused a cutoff
+	private final long firstMoveCutoffs;	// Cutoffs caused by the first move
+	private final long tableProbes;		// Lookups in the transposition table
+	private final long tableHits;		// Lookups that found the position
+	private final int depth;			// Depth of the last finished search
+	private final int[] columnScores;	// Evaluation of each column
+	private final long elapsedNanos;	// Time the search took
+	
+	
+	/**
+	 * This constructor instantiates statistics with the given values.
+	 * @param nodes The number of positions searched.
+	 * @param cutoffs The number of moves that caused a cutoff.
+	 * @param firstMoveCutoffs The number of cutoffs caused by the first move
+	 * searched.
+	 * @param tableProbes The number of lookups in the transposition table.
+	 * @param tableHits The number of lookups that found the position.
+	 * @param depth The depth of the last search to finish.
+	 * @param columnScores The evaluation of each column.
+	 * @param elapsedNanos The time the search took in nanoseconds.
+	 */
+	public SearchStats(long nodes, long cutoffs, long firstMoveCutoffs,
+			long tableProbes, long tableHits, int depth, int[] columnScores,
+			long elapsedNanos) {
+		this.nodes = nodes;
+		this.cutoffs = cutoffs;
+		this.firstMoveCutoffs = firstMoveCutoffs;
+		this.tableProbes = tableProbes;
+		this.tableHits = tableHits;
+		this.depth = depth;
+		this.columnScores = columnScores.clone();
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of positions searched.
+	 * @return The number of positions.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of positions searched per second.
+	 * @return The number of positions per second.
+	 */
+	public double getNodesPerSecond() {
+		return elapsedNanos == 0 ? 0.0: nodes * 1e9 / elapsedNanos;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of moves that caused a cutoff, so that the rest of
+	 * the moves from their position were not searched.
+	 * @return The number of cutoffs.
+	 */
+	public long getCutoffs() {
+		return cutoffs;
+	}
+	
+	
+	
+	/**
+	 * Returns the fraction of cutoffs caused by the first move searched. The
+	 * closer it is to 1, the better the moves were ordered.
+	 * @return The fraction of cutoffs from the first move.
+	 */
+	public double getFirstMoveCutoffRate() {
+		return cutoffs == 0 ? 0.0: (double)firstMoveCutoffs / cutoffs;
+	}
+	
+	
+	
+	/**
+	 * Returns the fraction of lookups in the transposition table that found
+	 * the position.
+	 * @return The fraction of lookups that hit.
+	 */
+	public double getTableHitRate() {
+		return tableProbes == 0 ? 0.0: (double)tableHits / tableProbes;
+	}
+	
+	
+	
+	/**
+	 * Returns the depth of the last search to finish, which the move was
+	 * chosen from.
+	 * @return The depth.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	
+	
+	/**
+	 * Returns the evaluation of each column found by the last search to
+	 * finish. Full columns are Integer.MIN_VALUE.
+	 * @return The evaluations, indexed by column.
+	 */
+	public int[] getColumnScores() {
+		return columnScores.clone();
+	}
+	
+	
+	
+	/**
+	 * Returns the time the search took.
+	 * @return The time.
+	 */
+	public Duration getElapsed() {
+		return Duration.ofNanos(elapsedNanos);
+	}
+	
+}
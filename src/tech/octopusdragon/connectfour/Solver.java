@@ -0,0 +1,638 @@
+package tech.octopusdragon.connectfour;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Finds the exact game-theoretic value of Connect Four positions on the
+ * standard grid. The solver runs a negamax search with alpha-beta pruning
+ * over bitboards, repeatedly narrowing the possible score with null-window
+ * searches and remembering bounds in a transposition table.
+ * <p>
+ * Scores count how early the game is won. A positive score means the player
+ * on move can win: it is the number of spaces they would still have left
+ * after their winning token. A negative score means the player on move will
+ * lose, counted the same way for the opponent, and 0 means a draw.
+ * <p>
+ * Solving an early position can take minutes, so a solver can be given a
+ * stop condition. It is checked every few thousand positions, and once it
+ * holds, the search gives up and reports that it was stopped.
+ * @author Alex Gill
+ *
+ */
+public class Solver {
+	
+	public static final int WIDTH = ConnectFour.COLUMNS;	// Columns of the grid
+	public static final int HEIGHT = ConnectFour.ROWS;		// Rows of the grid
+	public static final int MIN_SCORE = -(WIDTH * HEIGHT) / 2 + 3;
+	public static final int MAX_SCORE = (WIDTH * HEIGHT + 1) / 2 - 3;
+	public static final int INVALID_MOVE = Integer.MIN_VALUE;	// Full column
+	public static final int DEFAULT_LOG_TABLE_SIZE = 23;
+	public static final int STOPPED = Integer.MIN_VALUE + 1;	// Search was stopped
+	
+	private static final int STOP_CHECK_MASK = (1 << 12) - 1;	// Nodes between checks
+	
+	// Columns from the center outwards
+	private static final int[] COLUMN_ORDER = new int[WIDTH];
+	static {
+		for (int i = 0; i < WIDTH; i++)
+			COLUMN_ORDER[i] = WIDTH / 2 + (1 - 2 * (i % 2)) * (i + 1) / 2;
+	}
+	
+	private int[] keys;			// Lower 32 bits of the key in each slot
+	private byte[] values;		// Bound stored in each slot, 0 if empty
+	private long[][] sortedMoves;	// Moves to search at each move count
+	private int[][] sortedScores;	// Scores of the moves being sorted
+	private long nodes;			// Number of positions searched
+	private BooleanSupplier stopCondition;	// When to give up, if ever
+	private boolean stopped;	// Whether the current search gave up
+	
+	
+	/**
+	 * This constructor instantiates a solver with a transposition table of
+	 * about 2^23 entries, taking up roughly 40 MB.
+	 */
+	public Solver() {
+		this(DEFAULT_LOG_TABLE_SIZE);
+	}
+	
+	
+	
+	/**
+	 * This constructor instantiates a solver with a transposition table of
+	 * about 2^logSize entries. Each entry takes up five bytes.
+	 * @param logSize The base 2 logarithm of the table size, at least 17.
+	 */
+	public Solver(int logSize) {
+		// Only the lower 32 bits of each key are stored, which identifies the
+		// position as long as the size is odd and at least 2^17.
+		int size = nextPrime(1 << Math.max(logSize, 17));
+		keys = new int[size];
+		values = new byte[size];
+		sortedMoves = new long[WIDTH * HEIGHT][WIDTH];
+		sortedScores = new int[WIDTH * HEIGHT][WIDTH];
+		nodes = 0;
+	}
+	
+	
+	
+	/**
+	 * Sets the condition under which searches give up. Positions solved
+	 * before that stay in the transposition table, so solving the same
+	 * position again picks up where the search left off.
+	 * @param stopCondition The condition or null to always search to the end.
+	 */
+	public void setStopCondition(BooleanSupplier stopCondition) {
+		this.stopCondition = stopCondition;
+	}
+	
+	
+	
+	/**
+	 * Returns the exact score of the given game for the player on move.
+	 * @param game The game, which must not be over.
+	 * @return The score or STOPPED if the stop condition held first.
+	 */
+	public int solve(ConnectFour game) {
+		return solve(Position.of(game));
+	}
+	
+	
+	
+	/**
+	 * Returns the exact score of the given position for the player on move.
+	 * @param position The position, which must not be over.
+	 * @return The score or STOPPED if the stop condition held first.
+	 */
+	public int solve(Position position) {
+		stopped = false;
+		if (position.canWinNext())
+			return (WIDTH * HEIGHT + 1 - position.moves) / 2;
+		int min = -(WIDTH * HEIGHT - position.moves) / 2;
+		int max = (WIDTH * HEIGHT + 1 - position.moves) / 2;
+		
+		// Narrow down the score with null-window searches, trying scores
+		// close to 0 first since they are the most expensive to prove
+		while (min < max) {
+			int med = min + (max - min) / 2;
+			if (med <= 0 && min / 2 < med)
+				med = min / 2;
+			else if (med >= 0 && max / 2 > med)
+				med = max / 2;
+			int result = negamax(position, med, med + 1);
+			if (stopped)
+				return STOPPED;
+			if (result <= med)
+				max = result;
+			else
+				min = result;
+		}
+		return min;
+	}
+	
+	
+	
+	/**
+	 * Returns the exact score of each column of the given game for the player
+	 * on move, or INVALID_MOVE for full columns.
+	 * @param game The game, which must not be over.
+	 * @return The score of each column, or null if the stop condition held
+	 * first.
+	 */
+	public int[] analyze(ConnectFour game) {
+		Position position = Position.of(game);
+		int[] scores = new int[WIDTH];
+		for (int column = 0; column < WIDTH; column++) {
+			if (!position.canPlay(column)) {
+				scores[column] = INVALID_MOVE;
+			}
+			else if (position.isWinningMove(column)) {
+				scores[column] = (WIDTH * HEIGHT + 1 - position.moves) / 2;
+			}
+			else {
+				long current = position.current;
+				long mask = position.mask;
+				position.playColumn(column);
+				int score = solve(position);
+				position.undo(current, mask);
+				if (score == STOPPED)
+					return null;
+				scores[column] = -score;
+			}
+		}
+		return scores;
+	}
+	
+	
+	
+	/**
+	 * Returns a column with the best exact score for the player on move. This
+	 * is cheaper than analyzing every column: after solving the position, each
+	 * column only has to be checked against its score with a null window.
+	 * @param game The game, which must not be over.
+	 * @return The best column or -1 if the stop condition held first.
+	 */
+	public int bestMove(ConnectFour game) {
+		return bestMove(Position.of(game));
+	}
+	
+	
+	
+	/**
+	 * Returns a column with the best exact score for the player on move,
+	 * closest to the center if there are several.
+	 * @param position The position, which must not be over.
+	 * @return The best column or -1 if the stop condition held first.
+	 */
+	public int bestMove(Position position) {
+		int score = solve(position);
+		if (score == STOPPED)
+			return -1;
+		for (int column : COLUMN_ORDER) {
+			if (!position.canPlay(column))
+				continue;
+			if (position.isWinningMove(column))
+				return column;
+			long current = position.current;
+			long mask = position.mask;
+			position.playColumn(column);
+			boolean best;
+			if (position.canWinNext())
+				best = -(WIDTH * HEIGHT + 1 - position.moves) / 2 >= score;
+			else
+				best = -negamax(position, -score, -score + 1) >= score;
+			position.undo(current, mask);
+			if (stopped)
+				return -1;
+			if (best)
+				return column;
+		}
+		return -1;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of positions searched since the solver was created
+	 * or last reset.
+	 * @return The number of positions searched.
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+	
+	
+	
+	/**
+	 * Resets the node count and clears the transposition table.
+	 */
+	public void reset() {
+		nodes = 0;
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = 0;
+			values[i] = 0;
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the score of the given position if it is within the given window.
+	 * Otherwise returns a bound: at most alpha if the score is at most alpha,
+	 * or at least beta if the score is at least beta. The player on move must
+	 * not be able to win immediately. Once the search is stopped, it returns
+	 * 0 without storing anything.
+	 * @param position The position.
+	 * @param alpha The alpha value.
+	 * @param beta The beta value.
+	 * @return The score or a bound on it.
+	 */
+	private int negamax(Position position, int alpha, int beta) {
+		nodes++;
+		if ((nodes & STOP_CHECK_MASK) == 0 && stopCondition != null &&
+				stopCondition.getAsBoolean())
+			stopped = true;
+		if (stopped)
+			return 0;
+		
+		// Lose if every move lets the opponent win, and draw if the grid is
+		// about to fill up
+		long next = position.possibleNonLosingMoves();
+		if (next == 0)
+			return -(WIDTH * HEIGHT - position.moves) / 2;
+		if (position.moves >= WIDTH * HEIGHT - 2)
+			return 0;
+		
+		// Tighten the window with the best and worst possible scores
+		int min = -(WIDTH * HEIGHT - 2 - position.moves) / 2;
+		if (alpha < min) {
+			alpha = min;
+			if (alpha >= beta)
+				return alpha;
+		}
+		int max = (WIDTH * HEIGHT - 1 - position.moves) / 2;
+		long key = position.key();
+		int slot = (int)(key % keys.length);
+		if (keys[slot] == (int)key && values[slot] != 0) {
+			int value = values[slot];
+			if (value > MAX_SCORE - MIN_SCORE + 1) {
+				min = value + 2 * MIN_SCORE - MAX_SCORE - 2;
+				if (alpha < min) {
+					alpha = min;
+					if (alpha >= beta)
+						return alpha;
+				}
+			}
+			else {
+				max = value + MIN_SCORE - 1;
+			}
+		}
+		if (beta > max) {
+			beta = max;
+			if (alpha >= beta)
+				return beta;
+		}
+		
+		// Sort the moves by how many winning spaces they make, keeping the
+		// center-out order for ties
+		long[] moves = sortedMoves[position.moves];
+		int[] scores = sortedScores[position.moves];
+		int count = 0;
+		for (int i = WIDTH - 1; i >= 0; i--) {
+			long move = next & Position.columnMask(COLUMN_ORDER[i]);
+			if (move != 0) {
+				int score = position.moveScore(move);
+				int j = count++;
+				while (j > 0 && scores[j - 1] > score) {
+					moves[j] = moves[j - 1];
+					scores[j] = scores[j - 1];
+					j--;
+				}
+				moves[j] = move;
+				scores[j] = score;
+			}
+		}
+		
+		// Search the moves from best to worst
+		long current = position.current;
+		long mask = position.mask;
+		for (int i = count - 1; i >= 0; i--) {
+			position.play(moves[i]);
+			int score = -negamax(position, -beta, -alpha);
+			position.undo(current, mask);
+			if (stopped)
+				return 0;
+			if (score >= beta) {
+				store(key, slot, score + MAX_SCORE - 2 * MIN_SCORE + 2);
+				return score;
+			}
+			if (score > alpha)
+				alpha = score;
+		}
+		store(key, slot, alpha - MIN_SCORE + 1);
+		return alpha;
+	}
+	
+	
+	
+	private void store(long key, int slot, int value) {
+		keys[slot] = (int)key;
+		values[slot] = (byte)value;
+	}
+	
+	
+	
+	private static int nextPrime(int n) {
+		while (true) {
+			boolean prime = true;
+			for (int i = 2; (long)i * i <= n; i++) {
+				if (n % i == 0) {
+					prime = false;
+					break;
+				}
+			}
+			if (prime)
+				return n;
+			n++;
+		}
+	}
+	
+	
+	
+	/**
+	 * A position on the standard grid stored as two bitboards. Each column
+	 * takes up HEIGHT + 1 bits, starting with the bottom space, the same as in
+	 * ConnectFour. The key of a position is unique.
+	 * @author Alex Gill
+	 *
+	 */
+	public static class Position {
+		
+		private static final long BOTTOM_MASK;	// Bottom space of every column
+		private static final long BOARD_MASK;	// Every space of the grid
+		private static final long COLUMN_BITS = (1L << HEIGHT + 1) - 1;	// One column of a key
+		static {
+			long bottom = 0;
+			for (int column = 0; column < WIDTH; column++)
+				bottom |= 1L << column * (HEIGHT + 1);
+			BOTTOM_MASK = bottom;
+			BOARD_MASK = bottom * ((1L << HEIGHT) - 1);
+		}
+		
+		private long current;	// Tokens of the player on move
+		private long mask;		// Tokens of both players
+		private int moves;		// Number of tokens on the grid
+		
+		
+		/**
+		 * This constructor instantiates an empty position.
+		 */
+		public Position() {
+			current = 0;
+			mask = 0;
+			moves = 0;
+		}
+		
+		
+		
+		/**
+		 * The copy constructor makes a copy of the given position.
+		 * @param object The position to copy.
+		 */
+		public Position(Position object) {
+			this.current = object.current;
+			this.mask = object.mask;
+			this.moves = object.moves;
+		}
+		
+		
+		
+		/**
+		 * Returns the position of the given game.
+		 * @param game The game.
+		 * @return The position.
+		 * @throws IllegalArgumentException If the game is not on the standard
+		 * grid.
+		 */
+		public static Position of(ConnectFour game) {
+			if (game.getGeometry() != Geometry.STANDARD)
+				throw new IllegalArgumentException("The solver only works on the standard grid");
+			Position position = new Position();
+			for (int column : game.getMoves())
+				position.playColumn(column);
+			return position;
+		}
+		
+		
+		
+		/**
+		 * Returns whether the given column can be played on.
+		 * @param column The column.
+		 * @return Whether the column is not full.
+		 */
+		public boolean canPlay(int column) {
+			return (mask & topMask(column)) == 0;
+		}
+		
+		
+		
+		/**
+		 * Drops a token for the player on move in the given column, which must
+		 * not be full.
+		 * @param column The column.
+		 */
+		public void playColumn(int column) {
+			play((mask + bottomMask(column)) & columnMask(column));
+		}
+		
+		
+		
+		/**
+		 * Returns whether dropping a token in the given column wins the game.
+		 * @param column The column.
+		 * @return Whether the move wins.
+		 */
+		public boolean isWinningMove(int column) {
+			return (winningPosition() & possible() & columnMask(column)) != 0;
+		}
+		
+		
+		
+		/**
+		 * Returns whether the player on move can win with their next move.
+		 * @return Whether the player on move can win immediately.
+		 */
+		public boolean canWinNext() {
+			return (winningPosition() & possible()) != 0;
+		}
+		
+		
+		
+		/**
+		 * Returns the number of tokens on the grid.
+		 * @return The number of tokens.
+		 */
+		public int getMoves() {
+			return moves;
+		}
+		
+		
+		
+		/**
+		 * Returns a key identifying the position.
+		 * @return The key.
+		 */
+		public long key() {
+			return current + mask;
+		}
+		
+		
+		
+		/**
+		 * Returns the key of the position's mirror image, which has the
+		 * columns in the opposite order.
+		 * @return The key of the mirror image.
+		 */
+		public long mirrorKey() {
+			long key = key();
+			long mirror = 0;
+			for (int column = 0; column < WIDTH; column++)
+				mirror |= (key >>> column * (HEIGHT + 1) & COLUMN_BITS) << (WIDTH - 1 - column) * (HEIGHT + 1);
+			return mirror;
+		}
+		
+		
+		
+		/**
+		 * Returns the smaller of the keys of the position and of its mirror
+		 * image. A position and its mirror image have the same score, so they
+		 * have the same canonical key.
+		 * @return The canonical key.
+		 */
+		public long canonicalKey() {
+			return Math.min(key(), mirrorKey());
+		}
+		
+		
+		
+		/**
+		 * Returns whether the canonical key is the key of the mirror image, so
+		 * that columns stored under it have to be mirrored back.
+		 * @return Whether the canonical image is the mirror image.
+		 */
+		public boolean isMirrored() {
+			return mirrorKey() < key();
+		}
+		
+		
+		
+		private void play(long move) {
+			current ^= mask;
+			mask |= move;
+			moves++;
+		}
+		
+		
+		
+		private void undo(long current, long mask) {
+			this.current = current;
+			this.mask = mask;
+			moves--;
+		}
+		
+		
+		
+		/**
+		 * Returns the playable spaces that do not give the opponent an
+		 * immediate win. If the opponent threatens to win in two places, there
+		 * are none.
+		 * @return The spaces as a bitboard.
+		 */
+		private long possibleNonLosingMoves() {
+			long possibleMask = possible();
+			long opponentWin = opponentWinningPosition();
+			long forcedMoves = possibleMask & opponentWin;
+			if (forcedMoves != 0) {
+				if ((forcedMoves & (forcedMoves - 1)) != 0)
+					return 0;
+				possibleMask = forcedMoves;
+			}
+			return possibleMask & ~(opponentWin >> 1);
+		}
+		
+		
+		
+		/**
+		 * Returns the number of spaces the player on move would threaten to
+		 * win in after the given move.
+		 * @param move The move as a bitboard.
+		 * @return The number of threatened spaces.
+		 */
+		private int moveScore(long move) {
+			return Long.bitCount(computeWinningPosition(current | move, mask));
+		}
+		
+		
+		
+		private long winningPosition() {
+			return computeWinningPosition(current, mask);
+		}
+		
+		
+		
+		private long opponentWinningPosition() {
+			return computeWinningPosition(current ^ mask, mask);
+		}
+		
+		
+		
+		private long possible() {
+			return (mask + BOTTOM_MASK) & BOARD_MASK;
+		}
+		
+		
+		
+		/**
+		 * Returns the empty spaces that would complete a line for the player
+		 * with the given tokens.
+		 * @param position The tokens of the player.
+		 * @param mask The tokens of both players.
+		 * @return The spaces as a bitboard.
+		 */
+		private static long computeWinningPosition(long position, long mask) {
+			// Vertical
+			long result = (position << 1) & (position << 2) & (position << 3);
+			
+			// Horizontal and both diagonals
+			for (int shift = HEIGHT; shift <= HEIGHT + 2; shift++) {
+				long pair = (position << shift) & (position << 2 * shift);
+				result |= pair & (position << 3 * shift);
+				result |= pair & (position >> shift);
+				pair = (position >> shift) & (position >> 2 * shift);
+				result |= pair & (position << shift);
+				result |= pair & (position >> 3 * shift);
+			}
+			
+			return result & (BOARD_MASK ^ mask);
+		}
+		
+		
+		
+		private static long topMask(int column) {
+			return 1L << (HEIGHT - 1 + column * (HEIGHT + 1));
+		}
+		
+		
+		
+		private static long bottomMask(int column) {
+			return 1L << column * (HEIGHT + 1);
+		}
+		
+		
+		
+		private static long columnMask(int column) {
+			return ((1L << HEIGHT) - 1) << column * (HEIGHT + 1);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,133 @@
+package tech.octopusdragon.connectfour;
+
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javafx.scene.media.AudioClip;
+
+/**
+ * Plays the sound effects of the game. The sounds are short, so each one is
+ * loaded into memory whole as an AudioClip, which starts playing at once
+ * instead of setting up a media pipeline on every play.
+ * <p>
+ * Every sound has a small pool of voices, each its own clip, that are used in
+ * turn, so a sound can overlap with itself as when tokens land in quick
+ * succession. Once every voice of a sound is playing, the oldest is stopped
+ * and started again from the beginning.
+ * <p>
+ * Nothing is loaded until load is called, and the clips are then loaded on a
+ * background thread, so starting the application never waits for them. A
+ * sound played before it has loaded, or that could not be loaded at all, as
+ * when there is no audio device, is skipped rather than waited for.
+ * @author Alex Gill
+ *
+ */
+public class SoundManager {
+	
+	/**
+	 * The sounds of the game.
+	 */
+	public enum Sound {
+		CLINK("clink.wav"),	// A token landing
+		CHEER("cheer.wav"),	// A player winning
+		LOSS("loss.wav");	// The player losing to the computer
+		
+		private final String resource;	// The file on the class path
+		
+		private Sound(String resource) {
+			this.resource = resource;
+		}
+	}
+	
+	public static final int DEFAULT_VOICES = 3;	// Default voices per sound
+	
+	private final int voiceCount;	// Voices per sound
+	private final int[] nextVoice;	// Voice each sound plays on next
+	private volatile EnumMap<Sound, AudioClip[]> voices;	// Null until loaded
+	private CompletableFuture<Void> loading;	// Null until load is called
+	
+	
+	/**
+	 * This constructor instantiates a manager with DEFAULT_VOICES voices per
+	 * sound. Nothing is loaded yet.
+	 */
+	public SoundManager() {
+		this(DEFAULT_VOICES);
+	}
+	
+	
+	
+	/**
+	 * This constructor instantiates a manager with the given number of voices
+	 * per sound. Nothing is loaded yet.
+	 * @param voiceCount The number of voices.
+	 */
+	public SoundManager(int voiceCount) {
+		this.voiceCount = Math.max(1, voiceCount);
+		this.nextVoice = new int[Sound.values().length];
+	}
+	
+	
+	
+	/**
+	 * Starts loading the sounds on a background thread and returns at once.
+	 * Calling it again does nothing.
+	 * @return The future that completes when the sounds have loaded, or
+	 * exceptionally if they could not be.
+	 */
+	public synchronized CompletableFuture<Void> load() {
+		if (loading == null) {
+			Executor loader = runnable -> {
+				Thread thread = new Thread(runnable, "connect-four-sounds");
+				thread.setDaemon(true);
+				thread.start();
+			};
+			loading = CompletableFuture.runAsync(() -> voices = loadVoices(), loader);
+		}
+		return loading;
+	}
+	
+	
+	
+	/**
+	 * Plays the given sound on its next voice. Does nothing if the sounds
+	 * have not loaded.
+	 * @param sound The sound.
+	 */
+	public void play(Sound sound) {
+		EnumMap<Sound, AudioClip[]> loaded = voices;
+		if (loaded == null)
+			return;
+		AudioClip voice;
+		synchronized (nextVoice) {
+			voice = loaded.get(sound)[nextVoice[sound.ordinal()]];
+			nextVoice[sound.ordinal()] = (nextVoice[sound.ordinal()] + 1) % voiceCount;
+		}
+		voice.stop();
+		voice.play();
+	}
+	
+	
+	
+	/**
+	 * Loads the voices of every sound.
+	 * @return The voices by sound.
+	 * @throws IllegalStateException If a sound is not on the class path.
+	 */
+	private EnumMap<Sound, AudioClip[]> loadVoices() {
+		EnumMap<Sound, AudioClip[]> loaded = new EnumMap<>(Sound.class);
+		for (Sound sound : Sound.values()) {
+			URL url = SoundManager.class.getClassLoader().getResource(sound.resource);
+			if (url == null)
+				throw new IllegalStateException("No such sound: " + sound.resource);
+			AudioClip[] clips = new AudioClip[voiceCount];
+			for (int i = 0; i < voiceCount; i++)
+				clips[i] = new AudioClip(url.toExternalForm());
+			loaded.put(sound, clips);
+		}
+		return loaded;
+	}
+	
+}
@@ -0,0 +1,300 @@
+package tech.octopusdragon.connectfour;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A table of solved endgame positions, read from a file made by
+ * TablebaseGenerator. Each position is stored as whether it is won, lost or
+ * drawn for the player on move, so a game in the table can be played
+ * perfectly without searching. Like OpeningBook, the file is memory-mapped
+ * read-only and one table can be used by many games at once.
+ * <p>
+ * The file starts with a header of the magic number, the most empty spaces a
+ * position in the table has, the number of positions, and the numbers of
+ * low and high bits the keys are split into, all ints. The canonical keys of
+ * the positions from Solver.Position are sorted and put in buckets by their
+ * high bits. The header is followed by the index of the first key of each
+ * bucket as ints, with one more index at the end. Then the low bits of each
+ * key are packed into longs, lowest bits first, and only they are stored,
+ * since the bucket holds the rest. Last comes the outcome of each position in
+ * the same order, at two bits each, four to a byte, lowest bits first.
+ * <p>
+ * A position is looked up with a binary search of the low bits in its
+ * bucket. A position and its mirror image have the same outcome, so they
+ * share an entry. The table only holds some of the positions with a given
+ * number of empty spaces, so every key is kept in order to tell which
+ * positions are in it. That costs about 30 bits a position, and the outcome
+ * costs 2.
+ * @author Alex Gill
+ *
+ */
+public class Tablebase {
+	
+	public static final String DEFAULT_FILE = "tablebase.bin";	// Default file name
+	
+	static final int MAGIC = 0x43345433;	// "C4T3"
+	static final int HEADER_SIZE = 20;		// Bytes in the header
+	static final int KEY_BITS = Solver.WIDTH * (Solver.HEIGHT + 1);	// Bits in a key
+	static final int BUCKET_SIZE_BITS = 4;	// About 2^4 keys to a bucket
+	
+	// Outcomes as stored in the file. 0 is not used, so that a byte of zeros
+	// can never pass for an outcome.
+	static final int LOSS_VALUE = 1;
+	static final int DRAW_VALUE = 2;
+	static final int WIN_VALUE = 3;
+	
+	private ByteBuffer buffer;	// The mapped file
+	private int maxEmpty;		// Empty spaces in the emptiest positions
+	private int size;			// Number of positions in the table
+	private int lowBits;		// Bits of each key that are stored
+	private int bucketBits;		// Bits of each key that pick its bucket
+	private int keysStart;		// Offset of the low bits of the keys
+	private int valuesStart;	// Offset of the outcomes
+	
+	
+	/**
+	 * This constructor instantiates a table from an already mapped file.
+	 * @param buffer The contents of the tablebase file.
+	 * @throws IOException If the file is not a tablebase.
+	 */
+	private Tablebase(ByteBuffer buffer) throws IOException {
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a tablebase file");
+		this.buffer = buffer;
+		this.maxEmpty = buffer.getInt(4);
+		this.size = buffer.getInt(8);
+		this.lowBits = buffer.getInt(12);
+		this.bucketBits = buffer.getInt(16);
+		if (bucketBits < 0 || bucketBits > 30 || lowBits + bucketBits != KEY_BITS)
+			throw new IOException("Not a tablebase file");
+		if (buffer.capacity() < fileSize(size, bucketBits))
+			throw new IOException("Tablebase file is truncated");
+		keysStart = HEADER_SIZE + ((1 << bucketBits) + 1) * Integer.BYTES;
+		valuesStart = keysStart + (int)keyWords(size, lowBits) * Long.BYTES;
+	}
+	
+	
+	
+	/**
+	 * Opens the table in the given file by memory-mapping it.
+	 * @param file The tablebase file.
+	 * @return The table.
+	 * @throws IOException If the file cannot be read or is not a tablebase.
+	 */
+	public static Tablebase open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new Tablebase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	
+	
+	/**
+	 * Opens the table in DEFAULT_FILE in the working directory if there is one.
+	 * @return The table or null if there is no readable tablebase file.
+	 */
+	public static Tablebase openDefault() {
+		Path file = Paths.get(DEFAULT_FILE);
+		if (!Files.isReadable(file))
+			return null;
+		try {
+			return open(file);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the best column in the given game's position if the position is
+	 * in the table. A winning column is played at once. Otherwise the column
+	 * leaving the opponent the worst outcome is chosen, the one closest to the
+	 * center if there are several.
+	 * @param game The game.
+	 * @return The best column or -1 if the position is not in the table.
+	 */
+	public int bestMove(ConnectFour game) {
+		if (!covers(game))
+			return -1;
+		Solver.Position position = Solver.Position.of(game);
+		if (value(position.canonicalKey()) == 0)
+			return -1;
+		
+		int bestColumn = -1;
+		int bestOutcome = Integer.MIN_VALUE;
+		for (int column : Geometry.STANDARD.centerOrder) {
+			if (!position.canPlay(column))
+				continue;
+			if (position.isWinningMove(column))
+				return column;
+			Solver.Position next = new Solver.Position(position);
+			next.playColumn(column);
+			int outcome;
+			if (next.getMoves() == Solver.WIDTH * Solver.HEIGHT)
+				outcome = 0;
+			else {
+				int value = value(next.canonicalKey());
+				if (value == 0)
+					return -1;
+				outcome = -toOutcome(value);
+			}
+			if (outcome > bestOutcome) {
+				bestOutcome = outcome;
+				bestColumn = column;
+			}
+		}
+		return bestColumn;
+	}
+	
+	
+	
+	/**
+	 * Returns the outcome of the given game's position for the player on move
+	 * if the position is in the table.
+	 * @param game The game.
+	 * @return 1 if the position is won, 0 if it is drawn and -1 if it is
+	 * lost, or Solver.INVALID_MOVE if the position is not in the table.
+	 */
+	public int outcome(ConnectFour game) {
+		if (!covers(game))
+			return Solver.INVALID_MOVE;
+		int value = value(Solver.Position.of(game).canonicalKey());
+		return value == 0 ? Solver.INVALID_MOVE: toOutcome(value);
+	}
+	
+	
+	
+	/**
+	 * Returns the number of empty spaces in the emptiest positions in the
+	 * table.
+	 * @return The maximum number of empty spaces.
+	 */
+	public int getMaxEmpty() {
+		return maxEmpty;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of positions in the table.
+	 * @return The number of positions.
+	 */
+	public int size() {
+		return size;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of high bits of the keys that pick their bucket in
+	 * a table with the given number of positions, so that there are about
+	 * 2^BUCKET_SIZE_BITS keys to a bucket.
+	 * @param size The number of positions.
+	 * @return The number of bits.
+	 */
+	static int bucketBits(int size) {
+		int sizeBits = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(Math.max(size, 1));
+		return Math.max(0, sizeBits - BUCKET_SIZE_BITS);
+	}
+	
+	
+	
+	/**
+	 * Returns the number of longs the low bits of the given number of keys
+	 * are packed into.
+	 * @param size The number of keys.
+	 * @param lowBits The bits stored of each key.
+	 * @return The number of longs.
+	 */
+	static long keyWords(int size, int lowBits) {
+		return ((long)size * lowBits + Long.SIZE - 1) / Long.SIZE;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of bytes in a tablebase file with the given number
+	 * of positions.
+	 * @param size The number of positions.
+	 * @param bucketBits The bits of each key that pick its bucket.
+	 * @return The size of the file in bytes.
+	 */
+	static long fileSize(int size, int bucketBits) {
+		return HEADER_SIZE + ((1L << bucketBits) + 1) * Integer.BYTES +
+				keyWords(size, KEY_BITS - bucketBits) * Long.BYTES + (size + 3) / 4;
+	}
+	
+	
+	
+	/**
+	 * Returns whether the given game's position could be in the table.
+	 * @param game The game.
+	 * @return Whether the game is on the standard grid, is not over and has
+	 * few enough empty spaces.
+	 */
+	private boolean covers(ConnectFour game) {
+		return game.getGeometry() == Geometry.STANDARD && !game.isOver() &&
+				Solver.WIDTH * Solver.HEIGHT - game.getMoveCount() <= maxEmpty;
+	}
+	
+	
+	
+	/**
+	 * Binary searches the key's bucket for the low bits of the given key.
+	 * @param key The key of the position.
+	 * @return The stored value of the position or 0 if it is not in the table.
+	 */
+	private int value(long key) {
+		long bucket = key >>> lowBits;
+		if (bucket >= 1L << bucketBits)
+			return 0;
+		long lowKey = key & (1L << lowBits) - 1;
+		int low = buffer.getInt(HEADER_SIZE + (int)bucket * Integer.BYTES);
+		int high = buffer.getInt(HEADER_SIZE + ((int)bucket + 1) * Integer.BYTES) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long middleKey = lowKey(middle);
+			if (middleKey < lowKey)
+				low = middle + 1;
+			else if (middleKey > lowKey)
+				high = middle - 1;
+			else {
+				int packed = buffer.get(valuesStart + middle / 4);
+				return packed >>> (middle % 4 * 2) & 0x3;
+			}
+		}
+		return 0;
+	}
+	
+	
+	
+	/**
+	 * Returns the stored low bits of the key at the given index.
+	 * @param index The index of the key.
+	 * @return The low bits.
+	 */
+	private long lowKey(int index) {
+		long bit = (long)index * lowBits;
+		int word = keysStart + (int)(bit / Long.SIZE) * Long.BYTES;
+		int shift = (int)(bit % Long.SIZE);
+		long bits = buffer.getLong(word) >>> shift;
+		if (shift + lowBits > Long.SIZE)
+			bits |= buffer.getLong(word + Long.BYTES) << (Long.SIZE - shift);
+		return bits & (1L << lowBits) - 1;
+	}
+	
+	
+	
+	private static int toOutcome(int value) {
+		return value - DRAW_VALUE;
+	}
+	
+}
@@ -0,0 +1,239 @@
+package tech.octopusdragon.connectfour;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Generates a tablebase file for Tablebase. There are far too many positions
+ * with a given number of empty spaces to list them all, so the generator
+ * starts from the positions games reach with that many spaces left and
+ * solves every position that can follow them. The games are read from a
+ * file of game records or, without one, played at random.
+ * <p>
+ * Each position is solved by searching every move to the end of the game,
+ * and the outcomes of positions already solved are reused, so a position
+ * reachable from many starting positions is only searched once. A position
+ * and its mirror image are stored together, so only one of them is searched.
+ * <p>
+ * Usage: TablebaseGenerator [file] [max empty] [games | record file], by
+ * default tablebase.bin, 8 and 10000 random games. Max empty must be from 1
+ * to MAX_EMPTY.
+ * @author Alex Gill
+ *
+ */
+public class TablebaseGenerator {
+	
+	public static final int DEFAULT_MAX_EMPTY = 8;	// Default spaces left
+	public static final int DEFAULT_GAMES = 10000;	// Default random games
+	public static final int MAX_EMPTY = 16;		// Most spaces left it can solve
+	
+	private static final int SPACES = Solver.WIDTH * Solver.HEIGHT;
+	
+	private HashMap<Long, Byte> values;	// Stored values by canonical key
+	private int maxEmpty;				// Most empty spaces in a position
+	
+	
+	public static void main(String[] args) throws IOException {
+		Path file = Paths.get(args.length > 0 ? args[0]: Tablebase.DEFAULT_FILE);
+		int maxEmpty = args.length > 1 ? Integer.parseInt(args[1]): DEFAULT_MAX_EMPTY;
+		
+		long start = System.nanoTime();
+		TablebaseGenerator generator = new TablebaseGenerator(maxEmpty);
+		int games;
+		if (args.length > 2 && !args[2].matches("\\d+")) {
+			games = 0;
+			try (GameRecordReader reader = new GameRecordReader(
+					FileChannel.open(Paths.get(args[2]), StandardOpenOption.READ))) {
+				while (reader.next()) {
+					int[] moves = new int[reader.getMoveCount()];
+					for (int i = 0; i < moves.length; i++)
+						moves[i] = reader.getMove(i);
+					generator.addGame(moves);
+					games++;
+				}
+			}
+		}
+		else {
+			games = args.length > 2 ? Integer.parseInt(args[2]): DEFAULT_GAMES;
+			generator.addRandomGames(games, new Random(0));
+		}
+		generator.write(file);
+		System.out.printf("Wrote %d positions from %d games to %s in %.1f s%n",
+				generator.values.size(), games, file, (System.nanoTime() - start) / 1e9);
+	}
+	
+	
+	
+	/**
+	 * This constructor instantiates a generator with an empty table.
+	 * @param maxEmpty The most empty spaces a position in the table may have.
+	 * @throws IllegalArgumentException If maxEmpty is not from 1 to MAX_EMPTY.
+	 * Every position after more empty spaces would take far too long to
+	 * search.
+	 */
+	public TablebaseGenerator(int maxEmpty) {
+		if (maxEmpty < 1 || maxEmpty > MAX_EMPTY)
+			throw new IllegalArgumentException("Max empty spaces must be from 1 to " +
+					MAX_EMPTY + ": " + maxEmpty);
+		this.values = new HashMap<>();
+		this.maxEmpty = maxEmpty;
+	}
+	
+	
+	
+	/**
+	 * Solves every position that can follow the position the given game had
+	 * with maxEmpty spaces left. Games over before then add nothing.
+	 * @param moves The columns played in the game, in order.
+	 */
+	public void addGame(int[] moves) {
+		Solver.Position position = new Solver.Position();
+		for (int column : moves) {
+			if (position.getMoves() == SPACES - maxEmpty)
+				break;
+			if (!position.canPlay(column) || position.isWinningMove(column))
+				return;
+			position.playColumn(column);
+		}
+		if (position.getMoves() == SPACES - maxEmpty)
+			solve(position);
+	}
+	
+	
+	
+	/**
+	 * Plays the given number of games at random and adds each of them.
+	 * @param games The number of games.
+	 * @param random The random number generator choosing the moves.
+	 */
+	public void addRandomGames(int games, Random random) {
+		int[] moves = new int[SPACES];
+		for (int game = 0; game < games; game++) {
+			Solver.Position position = new Solver.Position();
+			int count = 0;
+			while (count < SPACES - maxEmpty) {
+				int column = random.nextInt(Solver.WIDTH);
+				if (!position.canPlay(column))
+					continue;
+				if (position.isWinningMove(column))
+					break;
+				position.playColumn(column);
+				moves[count++] = column;
+			}
+			addGame(Arrays.copyOf(moves, count));
+		}
+	}
+	
+	
+	
+	/**
+	 * Writes the table to the given file, replacing it if it exists.
+	 * @param file The file.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void write(Path file) throws IOException {
+		int size = values.size();
+		long[] keys = new long[size];
+		int index = 0;
+		for (long key : values.keySet())
+			keys[index++] = key;
+		Arrays.sort(keys);
+		int bucketBits = Tablebase.bucketBits(size);
+		int lowBits = Tablebase.KEY_BITS - bucketBits;
+		
+		ByteBuffer buffer = ByteBuffer.allocate((int)Tablebase.fileSize(size, bucketBits));
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		buffer.putInt(Tablebase.MAGIC);
+		buffer.putInt(maxEmpty);
+		buffer.putInt(size);
+		buffer.putInt(lowBits);
+		buffer.putInt(bucketBits);
+		
+		// Write where each bucket starts
+		index = 0;
+		for (int bucket = 0; bucket <= 1 << bucketBits; bucket++) {
+			while (index < size && keys[index] >>> lowBits < bucket)
+				index++;
+			buffer.putInt(index);
+		}
+		
+		// Pack the low bits of the keys
+		long[] words = new long[(int)Tablebase.keyWords(size, lowBits)];
+		long lowMask = (1L << lowBits) - 1;
+		for (int i = 0; i < size; i++) {
+			long bit = (long)i * lowBits;
+			int word = (int)(bit / Long.SIZE);
+			int shift = (int)(bit % Long.SIZE);
+			words[word] |= (keys[i] & lowMask) << shift;
+			if (shift + lowBits > Long.SIZE)
+				words[word + 1] |= (keys[i] & lowMask) >>> (Long.SIZE - shift);
+		}
+		for (long word : words)
+			buffer.putLong(word);
+		
+		// Pack the outcomes
+		int offset = buffer.position();
+		for (int i = 0; i < size; i++) {
+			int value = values.get(keys[i]);
+			buffer.put(offset + i / 4, (byte)(buffer.get(offset + i / 4) | value << (i % 4 * 2)));
+		}
+		buffer.position(0);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the number of positions solved so far.
+	 * @return The number of positions.
+	 */
+	public int size() {
+		return values.size();
+	}
+	
+	
+	
+	/**
+	 * Solves the given position and every position that can follow it,
+	 * storing their values.
+	 * @param position The position, which must not be over.
+	 * @return The outcome for the player on move: 1 for a win, 0 for a draw
+	 * and -1 for a loss.
+	 */
+	private int solve(Solver.Position position) {
+		Byte stored = values.get(position.canonicalKey());
+		if (stored != null)
+			return stored - Tablebase.DRAW_VALUE;
+		
+		// Every move is searched, even after a win is found, so that the
+		// positions after each of them are in the table too
+		int best = -1;
+		for (int column = 0; column < Solver.WIDTH; column++) {
+			if (!position.canPlay(column))
+				continue;
+			if (position.isWinningMove(column)) {
+				best = 1;
+				continue;
+			}
+			Solver.Position next = new Solver.Position(position);
+			next.playColumn(column);
+			int outcome = next.getMoves() == SPACES ? 0: -solve(next);
+			best = Math.max(best, outcome);
+		}
+		values.put(position.canonicalKey(), (byte)(best + Tablebase.DRAW_VALUE));
+		return best;
+	}
+	
+}
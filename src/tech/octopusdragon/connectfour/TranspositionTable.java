@@ -0,0 +1,178 @@
+package tech.octopusdragon.connectfour;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size table of positions already evaluated by the minimax search,
+ * keyed by Zobrist hash. Each entry remembers the evaluation, whether it is
+ * exact or only a bound, the depth it was searched to and the best move.
+ * <p>
+ * The table is a single array of slots indexed by the low bits of the hash.
+ * When two positions map to the same slot, the new entry replaces the old one
+ * if the old entry is for the same position, was stored during an earlier
+ * search or was searched to a depth no greater than the new entry. Otherwise
+ * the old, deeper entry is kept.
+ * <p>
+ * Any number of threads can use the table at once without locking. Each entry
+ * is packed into one long, and its slot holds the entry along with the hash
+ * XORed with the entry. If two threads write the same slot at once, the two
+ * longs may come from different writes; the hash then fails to match and the
+ * slot is treated as empty.
+ * @author Alex Gill
+ *
+ */
+public class TranspositionTable {
+	
+	/**
+	 * Kinds of evaluations that can be stored in the table.
+	 */
+	public enum Bound {
+		EXACT,	// The evaluation is exact
+		LOWER,	// The real evaluation is at least the stored one
+		UPPER	// The real evaluation is at most the stored one
+	}
+	
+	private static final int ENTRY_SIZE = 16;	// Bytes taken up by one entry
+	private static final Bound[] BOUNDS = Bound.values();
+	
+	private AtomicLongArray slots;	// Hash XOR entry, then entry, per slot
+	private int mask;				// Mask of the hash bits used as the index
+	private volatile int age;		// Number of the current search
+	
+	
+	/**
+	 * This constructor instantiates a table taking up at most the given number
+	 * of megabytes. The number of slots is rounded down to a power of two.
+	 * @param megabytes The size of the table in megabytes.
+	 */
+	public TranspositionTable(int megabytes) {
+		long entries = Math.max(1, (long)megabytes * 1024 * 1024 / ENTRY_SIZE);
+		int size = Integer.highestOneBit((int)Math.min(entries, 1 << 30));
+		slots = new AtomicLongArray(2 * size);
+		mask = size - 1;
+		age = 0;
+	}
+	
+	
+	
+	/**
+	 * Marks the start of a new search. Entries from earlier searches are kept
+	 * but can be replaced by any new entry.
+	 */
+	public void newSearch() {
+		age = (age + 1) & 0xFF;
+	}
+	
+	
+	
+	/**
+	 * Removes every entry from the table.
+	 */
+	public void clear() {
+		for (int i = 0; i < slots.length(); i++)
+			slots.setOpaque(i, 0);
+	}
+	
+	
+	
+	/**
+	 * Looks up the given position.
+	 * @param hash The hash of the position.
+	 * @return The entry of the position or 0 if it is not in the table.
+	 */
+	public long probe(long hash) {
+		int slot = (int)hash & mask;
+		long entry = slots.getOpaque(2 * slot + 1);
+		if (entry != 0 && (slots.getOpaque(2 * slot) ^ entry) == hash)
+			return entry;
+		return 0;
+	}
+	
+	
+	
+	/**
+	 * Stores an evaluation of the given position, following the replacement
+	 * policy described above.
+	 * @param hash The hash of the position.
+	 * @param score The evaluation.
+	 * @param bound Whether the evaluation is exact or a bound.
+	 * @param depth The depth the position was searched to.
+	 * @param bestMove The best column found or -1 if there is none.
+	 */
+	public void store(long hash, int score, Bound bound, int depth, int bestMove) {
+		int slot = (int)hash & mask;
+		long old = slots.getOpaque(2 * slot + 1);
+		if (old != 0 && (slots.getOpaque(2 * slot) ^ old) != hash &&
+				ageOf(old) == age && getDepth(old) > depth)
+			return;
+		long entry = (score & 0xFFFFFFFFL) |
+				((long)(depth & 0xFF) << 32) |
+				((long)((bestMove + 1) & 0xFF) << 40) |
+				((long)bound.ordinal() << 48) |
+				((long)age << 50) |
+				(1L << 58);	// Marks the slot as used
+		slots.setOpaque(2 * slot, hash ^ entry);
+		slots.setOpaque(2 * slot + 1, entry);
+	}
+	
+	
+	
+	/**
+	 * Returns the evaluation stored in the given entry.
+	 * @param entry The entry.
+	 * @return The evaluation.
+	 */
+	public static int getScore(long entry) {
+		return (int)entry;
+	}
+	
+	
+	
+	/**
+	 * Returns whether the evaluation in the given entry is exact or a bound.
+	 * @param entry The entry.
+	 * @return The kind of evaluation.
+	 */
+	public static Bound getBound(long entry) {
+		return BOUNDS[(int)(entry >>> 48) & 0x3];
+	}
+	
+	
+	
+	/**
+	 * Returns the depth the position in the given entry was searched to.
+	 * @param entry The entry.
+	 * @return The depth.
+	 */
+	public static int getDepth(long entry) {
+		return (int)(entry >>> 32) & 0xFF;
+	}
+	
+	
+	
+	/**
+	 * Returns the best move stored in the given entry.
+	 * @param entry The entry.
+	 * @return The best column or -1 if there is none.
+	 */
+	public static int getBestMove(long entry) {
+		return (int)(entry >>> 40 & 0xFF) - 1;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of slots in the table.
+	 * @return The number of slots.
+	 */
+	public int size() {
+		return slots.length() / 2;
+	}
+	
+	
+	
+	private static int ageOf(long entry) {
+		return (int)(entry >>> 50) & 0xFF;
+	}
+	
+}